@@ -0,0 +1,34 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Startup cost breakdown of one overlay engine, all durations in nanoseconds (System.nanoTime).
+ * Loader time is shared by every engine of the service, it's only paid by the first one.
+ */
+final class EngineStartupTrace {
+    long loaderNanos;         // FlutterLoader init done in OverlayService.onCreate
+    long constructNanos;      // new FlutterEngine(...)
+    long registrationNanos;   // plugin registration
+    int pluginCount;          // -1 when the generated registrant was used
+    long entrypointNanos;     // executeDartEntrypoint
+    long firstFrameNanos;     // addView -> first frame rendered, last launch
+    boolean reused;           // engine came from the cache on the last launch
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("loaderMs", ms(loaderNanos));
+        map.put("constructMs", ms(constructNanos));
+        map.put("registrationMs", ms(registrationNanos));
+        map.put("pluginCount", pluginCount);
+        map.put("entrypointMs", ms(entrypointNanos));
+        map.put("firstFrameMs", ms(firstFrameNanos));
+        map.put("reused", reused);
+        return map;
+    }
+}
@@ -16,7 +16,11 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.core.app.NotificationManagerCompat;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.UUID;
 
 import io.flutter.FlutterInjector;
 import io.flutter.embedding.engine.FlutterEngine;
@@ -27,6 +31,8 @@ import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.JSONMessageCodec;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
@@ -43,6 +49,18 @@ public class FlutterOverlayWindowPlugin implements
     private Context context;
     private Activity mActivity;
     private BasicMessageChannel<Object> messenger;
+    private EventChannel events;
+    private OverlayStateStore.Client state;
+    private BinaryMessenger binaryMessenger;
+    @Nullable
+    private OverlayRemote.Client remote;   // OverlayService runs in its own process
+
+    public FlutterOverlayWindowPlugin() {}
+
+    /// Serves the calls of the app in OverlayService's own process, see OverlayRemote.Server
+    FlutterOverlayWindowPlugin(Context context) {
+        this.context = context;
+    }
     private Result pendingResult;
 
     @Override
@@ -51,18 +69,39 @@ public class FlutterOverlayWindowPlugin implements
         channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), OverlayConstants.CHANNEL_TAG);
         channel.setMethodCallHandler(this);
 
-        messenger = new BasicMessageChannel(flutterPluginBinding.getBinaryMessenger(), OverlayConstants.MESSENGER_TAG,
-                JSONMessageCodec.INSTANCE);
+        // onMessage runs on a background task queue, see OverlayService.sendToAll
+        final BinaryMessenger binaryMessenger = flutterPluginBinding.getBinaryMessenger();
+        messenger = new BasicMessageChannel(binaryMessenger, OverlayConstants.MESSENGER_TAG,
+                JSONMessageCodec.INSTANCE, OverlayService.backgroundQueue(binaryMessenger));
         messenger.setMessageHandler(this);
 
+        events = new EventChannel(flutterPluginBinding.getBinaryMessenger(), OverlayConstants.EVENTS_TAG);
+        events.setStreamHandler(OverlayEvents.streamHandler());
+
+        // Every engine, main or overlay, gets its own view of the shared state
+        state = new OverlayStateStore.Client(binaryMessenger);
+        OverlaySharedBuffers.attach(binaryMessenger);
+        this.binaryMessenger = binaryMessenger;
+
         // This line is likely unnecessary and can be removed, but is harmless.
         WindowSetup.messenger = messenger;
+        WindowSetup.binaryMessenger = binaryMessenger;
+
+        if (OverlayRemote.isSeparate(context)) {
+            remote = OverlayRemote.client(context);
+            remote.bind();
+        }
     }
 
     @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
     public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
         pendingResult = result;
+        if (remote != null && OverlayRemote.forwards(call.method)) {
+            remote.invoke(call, result);
+            return;
+        }
+        OverlayTrace.appCall(call);
         if (call.method.equals("checkPermission")) {
             result.success(checkOverlayPermission());
         } else if (call.method.equals("requestPermission")) {
@@ -91,11 +130,6 @@ public class FlutterOverlayWindowPlugin implements
             int startX = startPosition != null ? startPosition.getOrDefault("x", OverlayConstants.DEFAULT_XY) : OverlayConstants.DEFAULT_XY;
             int startY = startPosition != null ? startPosition.getOrDefault("y", OverlayConstants.DEFAULT_XY) : OverlayConstants.DEFAULT_XY;
 
-            String entrypoint = call.argument("entrypoint");
-            String engineId = call.argument("engineId");
-            String initialRoute = call.argument("initialRoute");
-            java.util.List<String> dartArgs = call.argument("dartArgs");
-
             final Intent intent = new Intent(context, OverlayService.class);
             intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
             intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
@@ -106,6 +140,15 @@ public class FlutterOverlayWindowPlugin implements
             intent.putExtra("alignment", alignment != null ? alignment : "center"); // service will convert to gravity
             intent.putExtra("flagStr", flag != null ? flag : "flagNotFocusable");
             intent.putExtra("enableDrag", enableDrag);
+            Boolean autoImeFocus = call.argument("autoImeFocus");
+            intent.putExtra("autoImeFocus", autoImeFocus == null || autoImeFocus);
+            Boolean avoidOverlap = call.argument("avoidOverlap");
+            Integer layoutOrder = call.argument("layoutOrder");
+            intent.putExtra("layoutGroup", call.<String>argument("layoutGroup"));
+            intent.putExtra("avoidOverlap", avoidOverlap != null && avoidOverlap);
+            intent.putExtra("layoutOrder", layoutOrder != null ? layoutOrder : 0);
+            Integer priority = call.argument("priority");
+            intent.putExtra(OverlayScheduler.EXTRA_PRIORITY, priority != null ? priority : 0);
             intent.putExtra("positionGravity", positionGravity != null ? positionGravity : "none");
             intent.putExtra("overlayTitle", overlayTitle);
             intent.putExtra("overlayContent", overlayContent == null ? "" : overlayContent);
@@ -114,14 +157,153 @@ public class FlutterOverlayWindowPlugin implements
             // engine bootstrap
             intent.putExtra("startX", startX);
             intent.putExtra("startY", startY);
-            intent.putExtra("entrypoint", entrypoint != null ? entrypoint : "overlayMain");
-            intent.putExtra("engineId", engineId != null ? engineId : OverlayConstants.CACHED_TAG);
-            if (initialRoute != null) intent.putExtra("initialRoute", initialRoute);
-            if (dartArgs != null)
-                intent.putStringArrayListExtra("dartArgs", new java.util.ArrayList<>(dartArgs));
+            putEngineExtras(intent, call);
 
+            // Answered once the scheduler has shown, rejected or dropped this request
+            final String requestId = UUID.randomUUID().toString();
+            intent.putExtra(OverlayScheduler.EXTRA_REQUEST_ID, requestId);
+            OverlayScheduler.await(requestId, result);
+            try {
+                context.startService(intent);
+            } catch (RuntimeException e) {
+                // e.g. background start restrictions: nothing will ever resolve this request
+                MethodChannel.Result pending = OverlayScheduler.forget(requestId);
+                if (pending != null) pending.error("SERVICE", e.getMessage(), null);
+            }
+        } else if (call.method.equals("configureScheduler")) {
+            Integer maxLive = call.argument("maxLiveOverlays");
+            Integer maxBoots = call.argument("maxConcurrentBoots");
+            Integer maxQueued = call.argument("maxQueued");
+            Boolean preempt = call.argument("preempt");
+            OverlayService.configureScheduler(
+                    maxLive != null ? maxLive : 0,
+                    maxBoots != null ? maxBoots : 2,
+                    maxQueued != null ? maxQueued : 16,
+                    preempt != null && preempt);
+            result.success(null);
+        } else if (call.method.equals("getSchedulerState")) {
+            result.success(OverlayService.getSchedulerState());
+        } else if (call.method.equals("prewarmOverlay")) {
+            final Intent intent = new Intent(context, OverlayService.class);
+            intent.putExtra(OverlayService.INTENT_EXTRA_PREWARM, true);
+            putEngineExtras(intent, call);
             context.startService(intent);
             result.success(null);
+        } else if (call.method.equals("getEngineStartupBreakdown")) {
+            String engineId = call.argument("engineId");
+            result.success(OverlayService.getStartupTrace(engineId != null ? engineId : OverlayConstants.CACHED_TAG));
+        } else if (call.method.equals("getOverlayLaunchMetrics")) {
+            String engineId = call.argument("engineId");
+            result.success(OverlayService.getLaunchMetrics(engineId != null ? engineId : OverlayConstants.CACHED_TAG));
+        } else if (call.method.equals("configureWatchdog")) {
+            Integer intervalMs = call.argument("intervalMs");
+            Integer deadlineMs = call.argument("deadlineMs");
+            Integer maxMisses = call.argument("maxMisses");
+            String restartPolicy = call.argument("restartPolicy");
+            OverlayService.configureWatchdog(
+                    intervalMs != null ? intervalMs : 0,
+                    deadlineMs != null ? deadlineMs : 1000,
+                    maxMisses != null ? maxMisses : 3,
+                    restartPolicy
+            );
+            result.success(true);
+        } else if (call.method.equals("configurePerformanceHud")) {
+            Boolean enabled = call.argument("enabled");
+            Integer intervalMs = call.argument("intervalMs");
+            OverlayService.configureHud(
+                    enabled != null && enabled,
+                    intervalMs != null ? intervalMs : 1000,
+                    call.argument("corner")
+            );
+            result.success(true);
+        } else if (call.method.equals("getOverlayHealth")) {
+            String engineId = call.argument("engineId");
+            result.success(OverlayService.getOverlayHealth(engineId));
+        } else if (call.method.equals("getOverlayStats")) {
+            String engineId = call.argument("engineId");
+            result.success(OverlayService.getOverlayStats(engineId));
+        } else if (call.method.equals("configureSnapshotCache")) {
+            Boolean enabled = call.argument("enabled");
+            Integer budgetBytes = call.argument("budgetBytes");
+            Double scale = call.argument("scale");
+            OverlayService.configureSnapshotCache(
+                    enabled == null || enabled,
+                    budgetBytes != null ? budgetBytes : 4 * 1024 * 1024,
+                    scale != null ? scale.floatValue() : 0.5f
+            );
+            result.success(true);
+        } else if (call.method.equals("getSnapshotCacheStats")) {
+            result.success(OverlayService.getSnapshotCacheStats());
+        } else if (call.method.equals("configureLayoutGroup")) {
+            Boolean vertical = call.argument("vertical");
+            Integer spacing = call.argument("spacing");
+            Integer margin = call.argument("margin");
+            result.success(OverlayService.configureLayoutGroup(
+                    call.argument("group"),
+                    call.argument("dock"),
+                    vertical == null || vertical,
+                    spacing != null ? spacing : 8,
+                    margin != null ? margin : 0
+            ));
+        } else if (call.method.equals("setSnapTargets")) {
+            String engineId = call.argument("engineId");
+            result.success(OverlayService.setSnapTargets(
+                    engineId != null ? engineId : OverlayConstants.CACHED_TAG,
+                    call.argument("targets")
+            ));
+        } else if (call.method.equals("setOverlayLayout")) {
+            String engineId = call.argument("engineId");
+            Boolean avoidOverlap = call.argument("avoidOverlap");
+            Integer layoutOrder = call.argument("layoutOrder");
+            result.success(OverlayService.setOverlayLayout(
+                    engineId != null ? engineId : OverlayConstants.CACHED_TAG,
+                    call.argument("layoutGroup"),
+                    avoidOverlap != null && avoidOverlap,
+                    layoutOrder != null ? layoutOrder : 0
+            ));
+        } else if (call.method.equals("configureRefreshRate")) {
+            Double idleRefreshRate = call.argument("idleRefreshRate");
+            result.success(OverlayService.configureRefreshRate(
+                    call.argument("engineId"),
+                    call.argument("policy"),
+                    idleRefreshRate != null ? idleRefreshRate.floatValue() : 0f
+            ));
+        } else if (call.method.equals("dumpFlightRecorder")) {
+            result.success(OverlayFlightRecorder.dump());
+        } else if (call.method.equals("startTraceRecording")) {
+            String path = call.argument("path");
+            Integer maxBytes = call.argument("maxBytes");
+            final File file = path != null ? new File(path) : OverlayTrace.defaultFile(context.getCacheDir());
+            final boolean started = OverlayService.startTraceRecording(file,
+                    maxBytes != null ? maxBytes : OverlayTrace.DEFAULT_MAX_BYTES,
+                    context.getResources().getDisplayMetrics());
+            result.success(started ? file.getAbsolutePath() : null);
+        } else if (call.method.equals("stopTraceRecording")) {
+            try {
+                result.success(OverlayTrace.stop());
+            } catch (IOException e) {
+                result.error("TRACE", e.getMessage(), null);
+            }
+        } else if (call.method.equals("replayTrace")) {
+            String path = call.argument("path");
+            Double speed = call.argument("speed");
+            final OverlayTrace.Trace trace;
+            try {
+                trace = OverlayTrace.read(new File(path));
+            } catch (IOException e) {
+                result.error("TRACE", e.getMessage(), null);
+                return;
+            }
+            if (!OverlayService.replayTrace(trace, speed != null ? speed : 1.0, result::success)) {
+                result.error("TRACE", "The overlay service isn't running or is already replaying", null);
+            }
+        } else if (call.method.equals("getOverlayFrameMetrics")) {
+            String engineId = call.argument("engineId");
+            Boolean reset = call.argument("reset");
+            result.success(OverlayService.getFrameMetrics(
+                    engineId != null ? engineId : OverlayConstants.CACHED_TAG,
+                    reset != null && reset
+            ));
         } else if (call.method.equals("isOverlayActive")) {
             String engineId = call.argument("engineId");
             if (engineId == null || engineId.isEmpty()) engineId = OverlayConstants.CACHED_TAG;
@@ -175,8 +357,28 @@ public class FlutterOverlayWindowPlugin implements
             Intent i = new Intent(context, PipActivity.class);
             i.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
             i.putExtra("url", url);
+            i.putExtra(PipActivity.EXTRA_REQUESTED_AT, System.nanoTime());
             context.startActivity(i);
             result.success(true);
+        } else if (call.method.equals("prewarmPip")) {
+            Boolean enabled = call.argument("enabled");
+            if (enabled == null || enabled) {
+                PipWebViewPool.prewarm(context);
+            } else {
+                PipWebViewPool.release();
+            }
+            result.success(true);
+        } else if (call.method.equals("getPipMetrics")) {
+            result.success(PipMetrics.toMap());
+        } else if (call.method.equals("allocateSharedBuffer")) {
+            String name = call.argument("name");
+            Integer capacity = call.argument("capacity");
+            result.success(name != null && capacity != null && OverlaySharedBuffers.allocate(name, capacity));
+        } else if (call.method.equals("releaseSharedBuffer")) {
+            String name = call.argument("name");
+            result.success(name != null && OverlaySharedBuffers.release(name));
+        } else if (call.method.equals("getSharedBufferStats")) {
+            result.success(OverlaySharedBuffers.stats());
         } else if (call.method.equals("resizeOverlay")) {
             String engineId = call.argument("engineId");
             int width = call.argument("width");
@@ -203,9 +405,17 @@ public class FlutterOverlayWindowPlugin implements
 
     @Override
     public void onMessage(@Nullable Object message, @NonNull BasicMessageChannel.Reply reply) {
-        OverlayService.sendToAll(message);
-        // Log the raw message for debugging
-        Log.d("OverlayPlugin", "onMessage received from Dart: " + String.valueOf(message));
+        // Encoded once, its size is what the overlays receive
+        final ByteBuffer encoded = JSONMessageCodec.INSTANCE.encodeMessage(message);
+        final int size = encoded != null ? encoded.position() : 0;
+        OverlayFlightRecorder.record(OverlayFlightRecorder.MESSAGE_RECEIVE, null, size, 0);
+        if (remote != null) {
+            remote.sendMessage(encoded);
+        } else {
+            OverlayService.sendEncodedToAll(encoded, size);
+        }
+        // Size only: messages may be large or carry user data (adb shell setprop log.tag.OverlayPlugin DEBUG)
+        if (Log.isLoggable("OverlayPlugin", Log.DEBUG)) Log.d("OverlayPlugin", "onMessage received from Dart: " + size + " bytes");
         reply.reply(true);  // send back an ack so Dart Future completes
     }
 
@@ -213,6 +423,10 @@ public class FlutterOverlayWindowPlugin implements
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
         channel.setMethodCallHandler(null);
+        events.setStreamHandler(null);
+        state.dispose();
+        OverlaySharedBuffers.detach(binaryMessenger);
+        if (remote != null) remote.unbind();
         WindowSetup.messenger.setMessageHandler(null);
     }
 
@@ -246,6 +460,23 @@ public class FlutterOverlayWindowPlugin implements
 //        overlayMessageChannel.send(message, reply);
 //    }
 
+    // Engine bootstrap extras shared by showOverlay and prewarmOverlay
+    private void putEngineExtras(Intent intent, MethodCall call) {
+        String entrypoint = call.argument("entrypoint");
+        String engineId = call.argument("engineId");
+        String initialRoute = call.argument("initialRoute");
+        java.util.List<String> dartArgs = call.argument("dartArgs");
+        java.util.List<String> pluginAllowlist = call.argument("pluginAllowlist");
+
+        intent.putExtra("entrypoint", entrypoint != null ? entrypoint : "overlayMain");
+        intent.putExtra("engineId", engineId != null ? engineId : OverlayConstants.CACHED_TAG);
+        if (initialRoute != null) intent.putExtra("initialRoute", initialRoute);
+        if (dartArgs != null)
+            intent.putStringArrayListExtra("dartArgs", new java.util.ArrayList<>(dartArgs));
+        if (pluginAllowlist != null)
+            intent.putStringArrayListExtra("pluginAllowlist", new java.util.ArrayList<>(pluginAllowlist));
+    }
+
     private boolean checkOverlayPermission() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             return Settings.canDrawOverlays(context);
@@ -0,0 +1,140 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single FIFO queue of overlay operations, all run on the main looper.
+ * Commands submitted from the main thread run inline once everything queued before them has
+ * run, so Intent-driven and channel-driven commands are applied in the order they arrived;
+ * one submitted by a running command is part of it and runs inline right away.
+ * Commands from other threads are queued; a queued command with a coalesce key (e.g. a move
+ * of one overlay) is replaced by a newer one with the same key and both callers get its result.
+ */
+final class OverlayCommandExecutor {
+    private static final String TAG = "OverlayCommands";
+
+    /// How long a synchronous call from another thread waits for the main thread
+    static final long AWAIT_MS = 2000;
+
+    private static final class Command<T> {
+        @Nullable
+        final String key;
+        volatile Callable<T> body;
+        final FutureTask<T> task;
+
+        Command(@Nullable String key, Callable<T> body) {
+            this.key = key;
+            this.body = body;
+            this.task = new FutureTask<>(() -> this.body.call());
+        }
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object lock = new Object();
+    private final ArrayDeque<Command<?>> queue = new ArrayDeque<>();
+    private final Map<String, Command<?>> pending = new HashMap<>(); // coalesce key -> queued command
+    private boolean drainPosted;
+    private int depth; // main thread only: commands currently running, nested ones included
+
+    private final Runnable drain = () -> {
+        synchronized (lock) {
+            drainPosted = false;
+        }
+        drain();
+    };
+
+    static boolean onMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    <T> Future<T> submit(@NonNull Callable<T> body) {
+        return submit(null, body);
+    }
+
+    /// @param coalesceKey queued commands with the same key are replaced instead of run twice
+    @SuppressWarnings("unchecked")
+    <T> Future<T> submit(@Nullable String coalesceKey, @NonNull Callable<T> body) {
+        if (onMainThread()) {
+            // Draining from inside a command would run later commands in the middle of it
+            if (depth == 0) drain();
+            Command<T> command = new Command<>(coalesceKey, body);
+            run(command);
+            return command.task;
+        }
+        synchronized (lock) {
+            if (coalesceKey != null) {
+                Command<T> queued = (Command<T>) pending.get(coalesceKey);
+                if (queued != null) {
+                    queued.body = body;
+                    return queued.task;
+                }
+            }
+            Command<T> command = new Command<>(coalesceKey, body);
+            queue.add(command);
+            if (coalesceKey != null) pending.put(coalesceKey, command);
+            if (!drainPosted) {
+                drainPosted = true;
+                mainHandler.post(drain);
+            }
+            return command.task;
+        }
+    }
+
+    /// Runs a command without waiting for a result; nobody reads its Future, so failures are logged here.
+    void execute(@NonNull Runnable body) {
+        submit(() -> {
+            try {
+                body.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Overlay command failed", e);
+            }
+            return null;
+        });
+    }
+
+    /// Main thread: runs every queued command, in order.
+    private void drain() {
+        while (true) {
+            final Command<?> command;
+            synchronized (lock) {
+                command = queue.poll();
+                if (command == null) return;
+                // No longer coalescable once it's about to run
+                if (command.key != null && pending.get(command.key) == command) pending.remove(command.key);
+            }
+            run(command);
+        }
+    }
+
+    private void run(Command<?> command) {
+        depth++;
+        try {
+            command.task.run();
+        } finally {
+            depth--;
+        }
+    }
+
+    /// Result of a submitted command, or fallback if it failed or the main thread didn't get to it in time.
+    static <T> T await(Future<T> future, T fallback) {
+        try {
+            return future.get(AWAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Log.w(TAG, "Overlay command failed", e);
+            return fallback;
+        }
+    }
+}
@@ -6,6 +6,9 @@ final public class OverlayConstants {
     static final String CHANNEL_TAG = "x-slayer/overlay_channel";
     static final String OVERLAY_TAG = "x-slayer/overlay";
     static final String MESSENGER_TAG = "x-slayer/overlay_messenger";
+    static final String EVENTS_TAG = "x-slayer/overlay_events";
+    static final String STATE_TAG = "x-slayer/overlay_state";
+    static final String BUFFERS_TAG = "x-slayer/overlay_buffers";
     static final String CHANNEL_ID = "Overlay Channel";
     static final int NOTIFICATION_ID = 4579;
     static final int DEFAULT_XY = -6;
@@ -0,0 +1,79 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Fan-out of native overlay events to every engine listening on {@link OverlayConstants#EVENTS_TAG}.
+ * Each event is a map with a "type" key, e.g. "launch".
+ */
+final class OverlayEvents {
+    private static final CopyOnWriteArrayList<EventChannel.EventSink> sinks = new CopyOnWriteArrayList<>();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    interface Forwarder {
+        void forward(Map<String, Object> event);
+    }
+
+    /// Set in a separate service process while the app is connected, see OverlayRemote
+    static volatile Forwarder forwarder;
+
+    private OverlayEvents() {}
+
+    static EventChannel.StreamHandler streamHandler() {
+        return new EventChannel.StreamHandler() {
+            private EventChannel.EventSink sink;
+
+            @Override
+            public void onListen(Object arguments, EventChannel.EventSink events) {
+                sink = events;
+                sinks.add(events);
+            }
+
+            @Override
+            public void onCancel(Object arguments) {
+                if (sink != null) sinks.remove(sink);
+                sink = null;
+            }
+        };
+    }
+
+    static boolean hasListeners() {
+        return !sinks.isEmpty();
+    }
+
+    /// Sends {type, engineId, ...payload} to all listeners, from any thread.
+    static void emit(String type, String engineId, Map<String, Object> payload) {
+        final Forwarder f = forwarder;
+        if (sinks.isEmpty() && f == null) return;
+        final Map<String, Object> event = new HashMap<>(payload);
+        event.put("type", type);
+        event.put("engineId", engineId);
+        if (f != null) f.forward(event);
+        if (sinks.isEmpty()) return;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            dispatch(event);
+        } else {
+            mainHandler.post(() -> dispatch(event));
+        }
+    }
+
+    /// Main thread: an event emitted in the service process
+    static void dispatchForwarded(Map<?, ?> event) {
+        for (EventChannel.EventSink sink : sinks) {
+            try { sink.success(event); } catch (Throwable ignored) {}
+        }
+    }
+
+    private static void dispatch(Map<String, Object> event) {
+        for (EventChannel.EventSink sink : sinks) {
+            try { sink.success(event); } catch (Throwable ignored) {}
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free ring buffer of the last {@link #CAPACITY} overlay operations.
+ * Recording is a getAndIncrement plus four array writes, no allocation.
+ * Each record dumps to 24 little-endian bytes:
+ * int64 monotonic nanos, int16 type, int16 engine index, int32 sequence, int32 a, int32 b.
+ */
+final class OverlayFlightRecorder {
+    static final int SHOW = 1;
+    static final int CLOSE = 2;
+    static final int MOVE = 3;            // a = x px, b = y px
+    static final int RESIZE = 4;          // a = width px, b = height px
+    static final int FLAG = 5;            // a = window flags
+    static final int TOUCH = 6;           // a = MotionEvent action, b = 1 once dragging
+    static final int SNAP_START = 7;      // a = dest x, b = dest y
+    static final int SNAP_END = 8;
+    static final int MESSAGE_SEND = 9;    // a = size
+    static final int MESSAGE_RECEIVE = 10; // a = size
+    static final int ENGINE_CREATE = 11;
+    static final int ENGINE_DESTROY = 12;
+
+    static final int CAPACITY = 4096;     // power of two
+    static final int RECORD_BYTES = 24;
+    private static final int MASK = CAPACITY - 1;
+
+    // 3 words per slot: time, meta (type << 48 | engine << 32 | seq), args (a << 32 | b)
+    private static final AtomicLongArray slots = new AtomicLongArray(CAPACITY * 3);
+    private static final AtomicLong cursor = new AtomicLong();
+    private static final ConcurrentHashMap<String, Integer> engineIndex = new ConcurrentHashMap<>();
+    private static final List<String> engineNames = new ArrayList<>();
+
+    private OverlayFlightRecorder() {}
+
+    private static int indexOf(String engineId) {
+        if (engineId == null) return 0xFFFF;
+        Integer idx = engineIndex.get(engineId);
+        if (idx != null) return idx;
+        synchronized (engineNames) {
+            idx = engineIndex.get(engineId);
+            if (idx == null) {
+                idx = engineNames.size() & 0xFFFF;
+                engineNames.add(engineId);
+                engineIndex.put(engineId, idx);
+            }
+            return idx;
+        }
+    }
+
+    static void record(int type, String engineId) {
+        record(type, engineId, 0, 0);
+    }
+
+    static void record(int type, String engineId, int a, int b) {
+        final long seq = cursor.getAndIncrement();
+        final int base = (int) (seq & MASK) * 3;
+        // meta first cleared then set last, like a seqlock: type 0 marks a slot being written
+        slots.set(base + 1, 0);
+        slots.lazySet(base, System.nanoTime());
+        slots.lazySet(base + 2, ((long) a << 32) | (b & 0xFFFFFFFFL));
+        slots.set(base + 1, ((long) type << 48) | ((long) indexOf(engineId) << 32) | (seq & 0xFFFFFFFFL));
+    }
+
+    /// {engines: [engineId by index], records: byte[], total: events ever recorded}
+    static Map<String, Object> dump() {
+        final long end = cursor.get();
+        final long start = Math.max(0, end - CAPACITY);
+        ByteBuffer out = ByteBuffer.allocate((int) (end - start) * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (long seq = start; seq < end; seq++) {
+            final int base = (int) (seq & MASK) * 3;
+            final long meta = slots.get(base + 1);
+            if ((meta >>> 48) == 0 || (meta & 0xFFFFFFFFL) != (seq & 0xFFFFFFFFL)) continue; // being overwritten
+            final long time = slots.get(base);
+            final long args = slots.get(base + 2);
+            // Overwritten while reading: time and args may belong to the next lap
+            if (slots.get(base + 1) != meta) continue;
+            out.putLong(time);
+            out.putShort((short) (meta >>> 48));
+            out.putShort((short) (meta >>> 32));
+            out.putInt((int) meta);
+            out.putInt((int) (args >>> 32));
+            out.putInt((int) args);
+        }
+        byte[] records = new byte[out.position()];
+        out.flip();
+        out.get(records);
+
+        Map<String, Object> map = new HashMap<>();
+        synchronized (engineNames) {
+            map.put("engines", new ArrayList<>(engineNames));
+        }
+        map.put("records", records);
+        map.put("total", end);
+        return map;
+    }
+}
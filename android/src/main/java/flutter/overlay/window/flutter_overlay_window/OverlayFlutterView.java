@@ -0,0 +1,123 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Build;
+import android.view.WindowInsets;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputMethodManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.flutter.embedding.android.FlutterSurfaceView;
+import io.flutter.embedding.android.FlutterView;
+
+/**
+ * FlutterView that reports the engine's text-input activity, so OverlayService can make the
+ * window focusable only while a TextField needs the keyboard.
+ * Flutter's TextInputPlugin shows the keyboard with requestFocus() + showSoftInput(); the latter
+ * is ignored while the window isn't focused yet, so it's re-issued once the window gets focus.
+ * The window goes back to not focusable when the keyboard hides, when TextInput.clearClient
+ * leaves no input client, when the window loses focus, or if no keyboard shows up within
+ * {@link #IME_TIMEOUT_MS} (e.g. TextInput.hide before it appeared, or a hardware keyboard).
+ */
+final class OverlayFlutterView extends FlutterView {
+    static final long IME_TIMEOUT_MS = 1500;
+
+    interface ImeListener {
+        /// Text input wants the keyboard, return true if the window is being made focusable
+        boolean onImeRequested(OverlayFlutterView view);
+
+        void onImeHidden(OverlayFlutterView view);
+    }
+
+    @Nullable
+    private ImeListener imeListener;
+    private boolean showPending;
+    private boolean imeVisible;
+    private boolean focusGranted; // the listener made the window focusable for the keyboard
+
+    private final Runnable imeTimeout = () -> {
+        if (!imeVisible) release();
+    };
+
+    OverlayFlutterView(@NonNull Context context, @NonNull FlutterSurfaceView surface) {
+        super(context, surface);
+    }
+
+    void setImeListener(@Nullable ImeListener listener) {
+        imeListener = listener;
+    }
+
+    @Override
+    public boolean requestFocus(int direction, Rect previouslyFocusedRect) {
+        if (imeListener != null && !hasWindowFocus() && imeListener.onImeRequested(this)) {
+            showPending = true;
+            focusGranted = true;
+            removeCallbacks(imeTimeout);
+            postDelayed(imeTimeout, IME_TIMEOUT_MS);
+        }
+        return super.requestFocus(direction, previouslyFocusedRect);
+    }
+
+    @Nullable
+    @Override
+    public InputConnection onCreateInputConnection(@NonNull EditorInfo outAttrs) {
+        InputConnection connection = super.onCreateInputConnection(outAttrs);
+        // clearClient restarts the input with no client left: the TextField is gone
+        if (connection == null && focusGranted) post(this::release);
+        return connection;
+    }
+
+    /// Gives the focus back, once per grant
+    private void release() {
+        removeCallbacks(imeTimeout);
+        showPending = false;
+        if (!focusGranted) return;
+        focusGranted = false;
+        if (imeListener != null) imeListener.onImeHidden(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(imeTimeout);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        if (hasWindowFocus && showPending) {
+            showPending = false;
+            InputMethodManager imm = (InputMethodManager) getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+            if (imm != null) imm.showSoftInput(this, 0);
+        } else if (!hasWindowFocus && focusGranted) {
+            release();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT_WATCH)
+    @NonNull
+    @Override
+    public WindowInsets onApplyWindowInsets(@NonNull WindowInsets insets) {
+        WindowInsets result = super.onApplyWindowInsets(insets);
+        final boolean visible;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            visible = insets.isVisible(WindowInsets.Type.ime());
+        } else {
+            // No IME visibility before R: a bottom inset taller than a nav bar means a keyboard
+            visible = insets.getSystemWindowInsetBottom() > getResources().getDisplayMetrics().heightPixels / 6;
+        }
+        if (imeVisible && !visible) {
+            removeCallbacks(imeTimeout);
+            showPending = false;
+            focusGranted = false;
+            if (imeListener != null) imeListener.onImeHidden(this);
+        }
+        imeVisible = visible;
+        return result;
+    }
+}
@@ -0,0 +1,168 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.view.Choreographer;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Frame and relayout timings of one overlay, bucketed by the interaction running at the time.
+ * Frame timings come from the overlay's own engine: its isolate forwards Flutter's FrameTiming
+ * (build and raster durations, and the frame's total span) over the per-engine channel, see
+ * FlutterOverlayWindow.overlayListener. They arrive in batches, so each frame is attributed to
+ * the interaction running at its vsync, kept in a short log of interaction changes (the engine
+ * stamps frames with the monotonic clock of System.nanoTime()).
+ * Separately, the vsync-to-vsync intervals of the app's main thread are timed while an interaction
+ * runs: that's where updateViewLayout relayouts are paid, and it's the same for every overlay.
+ * All methods must be called on the main thread except {@link #toMap()} and {@link #reset()}.
+ */
+final class OverlayFrameMetrics implements Choreographer.FrameCallback {
+    static final int IDLE = 0;
+    static final int DRAG = 1;
+    static final int RESIZE = 2;
+    static final int SNAP = 3;
+    private static final String[] NAMES = {"idle", "drag", "resize", "snap"};
+
+    // Frames starting in the 25ms bucket or later are more than 1.5 vsync at 60Hz
+    private static final double JANK_MS = 25;
+
+    interface InteractionListener {
+        void onInteractionChanged(int kind);
+    }
+
+    /// Values per frame in a frameTimings batch: vsync start, build, raster and total span, in micros
+    static final int TIMING_VALUES = 4;
+    private static final int CHANGES = 16;
+
+    private final OverlayHistogram[] frames = new OverlayHistogram[NAMES.length];
+    private final OverlayHistogram[] builds = new OverlayHistogram[NAMES.length];
+    private final OverlayHistogram[] rasters = new OverlayHistogram[NAMES.length];
+    private final OverlayHistogram[] mainThread = new OverlayHistogram[NAMES.length];
+    private final OverlayHistogram[] layouts = new OverlayHistogram[NAMES.length];
+    // Ring of the last interaction changes: when, and to what
+    private final long[] changedAt = new long[CHANGES];
+    private final int[] changedTo = new int[CHANGES];
+    private int changes;
+    private volatile int interaction = IDLE;
+    private long lastFrameNanos;
+    private boolean posted;
+    @Nullable
+    private InteractionListener listener;
+
+    OverlayFrameMetrics() {
+        for (int i = 0; i < NAMES.length; i++) {
+            frames[i] = new OverlayHistogram(OverlayHistogram.FRAME_BOUNDS_MS);
+            builds[i] = new OverlayHistogram(OverlayHistogram.FRAME_BOUNDS_MS);
+            rasters[i] = new OverlayHistogram(OverlayHistogram.FRAME_BOUNDS_MS);
+            mainThread[i] = new OverlayHistogram(OverlayHistogram.FRAME_BOUNDS_MS);
+            layouts[i] = new OverlayHistogram(OverlayHistogram.LAYOUT_BOUNDS_MS);
+        }
+    }
+
+    int interaction() {
+        return interaction;
+    }
+
+    void setInteractionListener(@Nullable InteractionListener listener) {
+        this.listener = listener;
+    }
+
+    void beginInteraction(int kind) {
+        final boolean changed = interaction != kind;
+        interaction = kind;
+        if (changed) {
+            changedAt[changes % CHANGES] = System.nanoTime();
+            changedTo[changes % CHANGES] = kind;
+            changes++;
+            if (listener != null) listener.onInteractionChanged(kind);
+        }
+        lastFrameNanos = 0;
+        if (kind != IDLE && !posted) {
+            posted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /// Ends the interaction only if it's still the running one (a drag may have turned into a snap).
+    void endInteraction(int kind) {
+        if (interaction == kind) beginInteraction(IDLE);
+    }
+
+    void stop() {
+        interaction = IDLE;
+        if (posted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            posted = false;
+        }
+    }
+
+    void recordLayout(long nanos) {
+        layouts[interaction].record(nanos);
+    }
+
+    /// A batch of the engine's frames, {@link #TIMING_VALUES} values per frame
+    void recordFrames(long[] timings) {
+        for (int i = 0; i + TIMING_VALUES <= timings.length; i += TIMING_VALUES) {
+            final int kind = interactionAt(timings[i] * 1000);
+            builds[kind].record(timings[i + 1] * 1000);
+            rasters[kind].record(timings[i + 2] * 1000);
+            frames[kind].record(timings[i + 3] * 1000);
+        }
+    }
+
+    /// The interaction running at that time; idle before the oldest change still in the log
+    private int interactionAt(long nanos) {
+        for (int n = changes - 1; n >= 0 && n >= changes - CHANGES; n--) {
+            if (changedAt[n % CHANGES] <= nanos) return changedTo[n % CHANGES];
+        }
+        return IDLE;
+    }
+
+    /// Main thread vsync intervals, only timed during interactions
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        posted = false;
+        final int kind = interaction;
+        if (kind == IDLE) return;
+        if (lastFrameNanos != 0) mainThread[kind].record(frameTimeNanos - lastFrameNanos);
+        lastFrameNanos = frameTimeNanos;
+        posted = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /// Frames the engine reported so far, all interactions together
+    long frameCount() {
+        long n = 0;
+        for (OverlayHistogram h : frames) n += h.count();
+        return n;
+    }
+
+    void reset() {
+        for (int i = 0; i < NAMES.length; i++) {
+            frames[i].reset();
+            builds[i].reset();
+            rasters[i].reset();
+            mainThread[i].reset();
+            layouts[i].reset();
+        }
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < NAMES.length; i++) {
+            Map<String, Object> entry = new HashMap<>();
+            Map<String, Object> frameMap = frames[i].toMap();
+            frameMap.put("jank", frames[i].countAbove(JANK_MS));
+            entry.put("frames", frameMap);
+            entry.put("build", builds[i].toMap());
+            entry.put("raster", rasters[i].toMap());
+            entry.put("mainThread", mainThread[i].toMap());
+            entry.put("layout", layouts[i].toMap());
+            map.put(NAMES[i], entry);
+        }
+        map.put("active", NAMES[interaction]);
+        return map;
+    }
+}
@@ -0,0 +1,86 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed-bucket duration histogram, cheap enough to record from hot paths (no allocation).
+ * Percentiles are approximated by the upper bound of the bucket they fall in.
+ */
+final class OverlayHistogram {
+    static final double[] FRAME_BOUNDS_MS = {8, 12, 16.7, 25, 33.4, 50, 100};
+    static final double[] LAYOUT_BOUNDS_MS = {0.5, 1, 2, 4, 8, 16};
+    static final double[] PING_BOUNDS_MS = {1, 2, 4, 8, 16, 33, 66, 133, 266, 500};
+
+    private final double[] boundsMs;
+    private final long[] counts;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    /// @param boundsMs ascending upper bounds, the last bucket is open-ended
+    OverlayHistogram(double[] boundsMs) {
+        this.boundsMs = boundsMs;
+        this.counts = new long[boundsMs.length + 1];
+    }
+
+    synchronized void record(long nanos) {
+        final double ms = nanos / 1_000_000.0;
+        int i = 0;
+        while (i < boundsMs.length && ms > boundsMs[i]) i++;
+        counts[i]++;
+        count++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    synchronized long count() {
+        return count;
+    }
+
+    /// Samples in the buckets starting at or above the given bound, e.g. frames slower than 1.5 vsync.
+    synchronized long countAbove(double ms) {
+        long above = 0;
+        for (int i = 1; i < counts.length; i++) {
+            if (boundsMs[i - 1] >= ms) above += counts[i];
+        }
+        return above;
+    }
+
+    synchronized void reset() {
+        for (int i = 0; i < counts.length; i++) counts[i] = 0;
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    private double percentile(double p) {
+        if (count == 0) return -1;
+        final long rank = (long) Math.ceil(count * p);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return i < boundsMs.length ? boundsMs[i] : maxNanos / 1_000_000.0;
+        }
+        return maxNanos / 1_000_000.0;
+    }
+
+    synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        List<Double> bounds = new ArrayList<>();
+        for (double b : boundsMs) bounds.add(b);
+        List<Long> buckets = new ArrayList<>();
+        for (long c : counts) buckets.add(c);
+        map.put("count", count);
+        map.put("totalMs", totalNanos / 1_000_000.0);
+        map.put("meanMs", count == 0 ? 0 : totalNanos / 1_000_000.0 / count);
+        map.put("maxMs", maxNanos / 1_000_000.0);
+        map.put("p50Ms", percentile(0.5));
+        map.put("p95Ms", percentile(0.95));
+        map.put("boundsMs", bounds);
+        map.put("buckets", buckets);
+        return map;
+    }
+}
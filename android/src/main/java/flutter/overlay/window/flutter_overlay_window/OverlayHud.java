@@ -0,0 +1,229 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.WindowManager;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Opt-in on-screen performance HUD: a small untouchable text window, added like the overlays,
+ * showing per overlay its engine's frame rate, updateViewLayout rate and message throughput, plus the
+ * engine count and the process RSS. It samples the counters the service already keeps (see
+ * OverlayStats and OverlayFrameMetrics) every {@link #intervalMs}, so it adds no work to the hot
+ * paths; disabled, it holds no view and posts nothing. Main thread only.
+ */
+final class OverlayHud {
+    private static final String TAG = "OverlayHud";
+
+    // Static so it can be configured before the service is started
+    static volatile boolean enabled = false;
+    static volatile long intervalMs = 1000;
+    static volatile String corner = "topLeft";
+
+    static final long MIN_INTERVAL_MS = 250;
+
+    private static final long PAGE_SIZE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+            ? Os.sysconf(OsConstants._SC_PAGESIZE) : 4096;
+
+    interface Source {
+        Map<String, OverlayStats> stats();
+
+        Map<String, OverlayFrameMetrics> frameMetrics();
+
+        int overlayCount();
+
+        int engineCount();
+    }
+
+    /// Counters at the previous sample, rates are the difference over the interval
+    private static final class Sample {
+        long frames;
+        long layouts;
+        long messages;
+        long bytes;
+    }
+
+    private final Context context;
+    private final Source source;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Sample> samples = new HashMap<>();
+    private final StringBuilder text = new StringBuilder(512);
+    private final byte[] statm = new byte[128];
+    @Nullable
+    private WindowManager windowManager;
+    @Nullable
+    private TextView view;
+    private long sampledAt;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            if (view == null) return;
+            update();
+            handler.postDelayed(this, Math.max(MIN_INTERVAL_MS, intervalMs));
+        }
+    };
+
+    OverlayHud(@NonNull Context context, @NonNull Source source) {
+        this.context = context;
+        this.source = source;
+    }
+
+    /// Shows or hides the HUD after enabled, intervalMs or corner changed
+    void apply() {
+        if (!enabled) {
+            hide();
+            return;
+        }
+        if (view != null) {
+            // New corner or interval: start over from a fresh sample
+            hide();
+        }
+        show();
+    }
+
+    private void show() {
+        windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        TextView hud = new TextView(context);
+        hud.setTypeface(Typeface.MONOSPACE);
+        hud.setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        hud.setTextColor(Color.WHITE);
+        hud.setBackgroundColor(0xB0000000);
+        final int pad = (int) (4 * context.getResources().getDisplayMetrics().density);
+        hud.setPadding(pad, pad, pad, pad);
+
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                        ? WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY
+                        : WindowManager.LayoutParams.TYPE_PHONE,
+                WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                        | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN,
+                PixelFormat.TRANSLUCENT
+        );
+        params.gravity = gravityOf(corner);
+        params.setTitle("OverlayHud");
+        try {
+            windowManager.addView(hud, params);
+        } catch (Throwable e) {
+            Log.w(TAG, "Can't show the HUD", e);
+            return;
+        }
+        view = hud;
+        samples.clear();
+        sampledAt = 0;
+        update();
+        handler.postDelayed(tick, Math.max(MIN_INTERVAL_MS, intervalMs));
+    }
+
+    void hide() {
+        handler.removeCallbacks(tick);
+        if (view != null && windowManager != null) {
+            try { windowManager.removeView(view); } catch (Throwable ignored) {}
+        }
+        view = null;
+        samples.clear();
+    }
+
+    private static int gravityOf(String corner) {
+        switch (corner) {
+            case "topRight":    return Gravity.TOP | Gravity.RIGHT;
+            case "bottomLeft":  return Gravity.BOTTOM | Gravity.LEFT;
+            case "bottomRight": return Gravity.BOTTOM | Gravity.RIGHT;
+            default:            return Gravity.TOP | Gravity.LEFT;
+        }
+    }
+
+    private void update() {
+        final TextView hud = view;
+        if (hud == null) return;
+        final long now = SystemClock.uptimeMillis();
+        final double seconds = sampledAt == 0 ? 0 : (now - sampledAt) / 1000.0;
+        sampledAt = now;
+
+        final Map<String, OverlayStats> stats = source.stats();
+        final Map<String, OverlayFrameMetrics> metrics = source.frameMetrics();
+        text.setLength(0);
+        text.append(String.format(Locale.ROOT, "overlays %d  engines %d  rss %.1f MB",
+                source.overlayCount(), source.engineCount(), rssBytes() / (1024.0 * 1024.0)));
+
+        // Sorted so lines don't jump around between samples
+        for (Map.Entry<String, OverlayStats> e : new TreeMap<>(stats).entrySet()) {
+            final String id = e.getKey();
+            final OverlayStats s = e.getValue();
+            final OverlayFrameMetrics m = metrics.get(id);
+            Sample last = samples.get(id);
+            final boolean first = last == null || seconds == 0;
+            if (last == null) {
+                last = new Sample();
+                samples.put(id, last);
+            }
+            final long frames = m != null ? m.frameCount() : 0;
+            final long layouts = s.layoutCount.get();
+            final long messages = s.messagesIn.get() + s.messagesOut.get();
+            final long bytes = s.bytesIn.get() + s.bytesOut.get();
+            text.append('\n').append(id).append("  ");
+            if (first) {
+                text.append("…");
+            } else {
+                // Frames the overlay's engine rendered, reported by its isolate in batches (about
+                // once a second in release builds); a reset of the frame metrics counts as none
+                final long newFrames = Math.max(0, frames - last.frames);
+                text.append(String.format(Locale.ROOT, "%3.0f fps", newFrames / seconds));
+                text.append(String.format(Locale.ROOT, "  %4.0f lay/s  %4.0f msg/s  %6.1f kB/s",
+                        (layouts - last.layouts) / seconds,
+                        (messages - last.messages) / seconds,
+                        (bytes - last.bytes) / seconds / 1024.0));
+            }
+            last.frames = frames;
+            last.layouts = layouts;
+            last.messages = messages;
+            last.bytes = bytes;
+        }
+        samples.keySet().retainAll(stats.keySet());
+        hud.setText(text);
+    }
+
+    /// Resident set of this process from /proc/self/statm (pages), 0 if unreadable
+    private long rssBytes() {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream("/proc/self/statm");
+            final int n = in.read(statm);
+            // "size resident shared ...": the second field
+            int i = 0;
+            while (i < n && statm[i] != ' ') i++;
+            long pages = 0;
+            for (i++; i < n && statm[i] >= '0' && statm[i] <= '9'; i++) pages = pages * 10 + (statm[i] - '0');
+            return pages * PAGE_SIZE;
+        } catch (IOException e) {
+            return 0;
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Phase timestamps of the launches of one overlay (System.nanoTime), plus a ring of the
+ * last {@link #HISTORY} intent -> first frame durations for percentiles.
+ */
+final class OverlayLaunchMetrics {
+    static final int HISTORY = 64;
+
+    static final class Launch {
+        long intentAt;
+        long engineReadyAt;
+        long entrypointAt;       // 0 when the engine was reused
+        long viewAttachedAt;
+        long addViewAt;
+        long firstFrameAt;
+        boolean engineCreated;
+
+        private static double since(long start, long at) {
+            return at == 0 ? -1 : (at - start) / 1_000_000.0;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("engineCreated", engineCreated);
+            map.put("engineReadyMs", since(intentAt, engineReadyAt));
+            map.put("entrypointMs", since(intentAt, entrypointAt));
+            map.put("viewAttachedMs", since(intentAt, viewAttachedAt));
+            map.put("addViewMs", since(intentAt, addViewAt));
+            map.put("firstFrameMs", since(intentAt, firstFrameAt));
+            return map;
+        }
+    }
+
+    private final long[] totals = new long[HISTORY];
+    private int count;
+    private Launch current;
+    private Launch last;
+
+    synchronized Launch begin(long intentAt) {
+        current = new Launch();
+        current.intentAt = intentAt;
+        return current;
+    }
+
+    synchronized void abandon(Launch launch) {
+        if (launch == current) current = null;
+    }
+
+    /// Closes the launch on its first frame, returns false if it was already closed or superseded.
+    synchronized boolean complete(Launch launch, long firstFrameAt) {
+        if (launch != current) return false;
+        launch.firstFrameAt = firstFrameAt;
+        totals[count % HISTORY] = firstFrameAt - launch.intentAt;
+        count++;
+        last = launch;
+        current = null;
+        return true;
+    }
+
+    synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        final int n = Math.min(count, HISTORY);
+        long[] sorted = Arrays.copyOf(totals, n);
+        Arrays.sort(sorted);
+        map.put("count", count);
+        map.put("p50Ms", n == 0 ? -1 : sorted[(n - 1) / 2] / 1_000_000.0);
+        map.put("p95Ms", n == 0 ? -1 : sorted[(int) Math.ceil(n * 0.95) - 1] / 1_000_000.0);
+        map.put("last", last != null ? last.toMap() : null);
+        map.put("pending", current != null ? current.toMap() : null);
+        return map;
+    }
+}
@@ -0,0 +1,233 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.graphics.Rect;
+import android.view.Choreographer;
+import android.view.Gravity;
+import android.view.View;
+import android.view.WindowManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Places all live overlays together: stacking/docking groups and overlap avoidance.
+ * Requests are coalesced into a single pass on the next vsync, which moves every overlay that
+ * needs it with one updateViewLayout each. Overlays in the middle of a drag, snap or resize
+ * animation are left alone until it ends. Main thread only.
+ */
+final class OverlayLayoutManager implements Choreographer.FrameCallback {
+
+    static final class Group {
+        String dock = "none";      // "none" | "left" | "right" | "top" | "bottom"
+        boolean vertical = true;   // stacking axis, ignored when docked (left/right stack vertically)
+        int spacingPx;
+        int marginPx;
+        final List<String> sequence = new ArrayList<>(); // stacking order from the last pass
+    }
+
+    interface Host {
+        Map<String, ? extends View> views();
+
+        @Nullable
+        EngineConfig config(String engineId);
+
+        /// true while a drag, snap or resize animation owns the overlay
+        boolean isBusy(String engineId);
+
+        int screenWidth();
+
+        int screenHeight();
+
+        void apply(String engineId, View view, WindowManager.LayoutParams params);
+    }
+
+    private static final int MAX_PUSHES = 8;
+
+    private final Host host;
+    private final Map<String, Group> groups = new HashMap<>();
+    private boolean posted;
+    @Nullable
+    private String mover;
+
+    OverlayLayoutManager(@NonNull Host host) {
+        this.host = host;
+    }
+
+    Group group(String name) {
+        Group g = groups.get(name);
+        if (g == null) {
+            g = new Group();
+            groups.put(name, g);
+        }
+        return g;
+    }
+
+    /// @param movedEngineId the overlay that just moved or resized: it keeps its spot, the others make room
+    void requestLayout(@Nullable String movedEngineId) {
+        if (movedEngineId != null) mover = movedEngineId;
+        if (posted) return;
+        posted = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void cancel() {
+        if (posted) Choreographer.getInstance().removeFrameCallback(this);
+        posted = false;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        posted = false;
+        final String moved = mover;
+        mover = null;
+        performLayout(moved);
+    }
+
+    private static Rect boundsOf(View v) {
+        int[] loc = new int[2];
+        v.getLocationOnScreen(loc);
+        return new Rect(loc[0], loc[1], loc[0] + v.getWidth(), loc[1] + v.getHeight());
+    }
+
+    private boolean managed(String id, View v) {
+        EngineConfig cfg = host.config(id);
+        if (cfg == null || v.getWidth() == 0 || host.isBusy(id)) return false;
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) v.getLayoutParams();
+        // Full-screen overlays can't avoid anything
+        if (p.width == WindowManager.LayoutParams.MATCH_PARENT || p.height == WindowManager.LayoutParams.MATCH_PARENT) {
+            return false;
+        }
+        return cfg.layoutGroup != null || cfg.avoidOverlap;
+    }
+
+    private void performLayout(@Nullable String moved) {
+        final Map<String, ? extends View> views = host.views();
+        final Map<String, Rect> target = new HashMap<>();
+        for (Map.Entry<String, ? extends View> e : views.entrySet()) {
+            if (managed(e.getKey(), e.getValue())) target.put(e.getKey(), boundsOf(e.getValue()));
+        }
+        if (target.isEmpty()) return;
+
+        // 1. Stacking groups
+        Map<String, List<String>> members = new HashMap<>();
+        for (String id : target.keySet()) {
+            EngineConfig cfg = host.config(id);
+            if (cfg == null || cfg.layoutGroup == null) continue;
+            List<String> list = members.get(cfg.layoutGroup);
+            if (list == null) {
+                list = new ArrayList<>();
+                members.put(cfg.layoutGroup, list);
+            }
+            list.add(id);
+        }
+        for (Map.Entry<String, List<String>> e : members.entrySet()) {
+            stack(group(e.getKey()), e.getValue(), target, moved);
+        }
+
+        // 2. Overlap avoidance, the moved overlay and grouped ones are placed first and stay put
+        List<String> order = new ArrayList<>(target.keySet());
+        Collections.sort(order, (a, b) -> rank(a, moved) - rank(b, moved));
+        List<Rect> placed = new ArrayList<>();
+        for (String id : order) {
+            Rect r = target.get(id);
+            EngineConfig cfg = host.config(id);
+            if (cfg != null && cfg.avoidOverlap && cfg.layoutGroup == null) {
+                for (int i = 0; i < MAX_PUSHES && pushOut(r, placed); i++) {
+                    clamp(r);
+                }
+            }
+            placed.add(r);
+        }
+
+        // 3. One relayout per overlay that actually moved
+        for (Map.Entry<String, Rect> e : target.entrySet()) {
+            View v = views.get(e.getKey());
+            if (v == null) continue;
+            Rect r = e.getValue();
+            WindowManager.LayoutParams p = (WindowManager.LayoutParams) v.getLayoutParams();
+            Rect current = boundsOf(v);
+            if (current.left == r.left && current.top == r.top) continue;
+            p.gravity = Gravity.TOP | Gravity.LEFT;
+            p.x = r.left;
+            p.y = r.top;
+            host.apply(e.getKey(), v, p);
+        }
+    }
+
+    private int rank(String id, @Nullable String moved) {
+        if (id.equals(moved)) return 0;
+        EngineConfig cfg = host.config(id);
+        return cfg != null && cfg.layoutGroup != null ? 1 : 2;
+    }
+
+    private void stack(Group g, List<String> ids, Map<String, Rect> target, @Nullable String moved) {
+        final boolean vertical = "left".equals(g.dock) || "right".equals(g.dock)
+                || (!"top".equals(g.dock) && !"bottom".equals(g.dock) && g.vertical);
+        if (moved != null && ids.contains(moved)) {
+            // Dropped inside its group: reorder by position along the stacking axis
+            Collections.sort(ids, (a, b) -> vertical
+                    ? target.get(a).top - target.get(b).top
+                    : target.get(a).left - target.get(b).left);
+        } else {
+            Collections.sort(ids, (a, b) -> {
+                int ia = g.sequence.indexOf(a), ib = g.sequence.indexOf(b);
+                if (ia < 0 || ib < 0) {
+                    EngineConfig ca = host.config(a), cb = host.config(b);
+                    return (ca != null ? ca.layoutOrder : 0) - (cb != null ? cb.layoutOrder : 0);
+                }
+                return ia - ib;
+            });
+        }
+        g.sequence.clear();
+        g.sequence.addAll(ids);
+
+        // The leader keeps its position along the axis (that's how a group is dragged)
+        Rect lead = target.get(ids.get(0));
+        int cursor = vertical ? lead.top : lead.left;
+        for (String id : ids) {
+            Rect r = target.get(id);
+            final int w = r.width(), h = r.height();
+            int x = vertical ? lead.left : cursor;
+            int y = vertical ? cursor : lead.top;
+            switch (g.dock) {
+                case "left":   x = g.marginPx; break;
+                case "right":  x = host.screenWidth() - w - g.marginPx; break;
+                case "top":    y = g.marginPx; break;
+                case "bottom": y = host.screenHeight() - h - g.marginPx; break;
+            }
+            r.set(x, y, x + w, y + h);
+            clamp(r);
+            cursor += (vertical ? h : w) + g.spacingPx;
+        }
+    }
+
+    /// Moves r out of the first placed rect it overlaps along the shortest axis, false if none.
+    private boolean pushOut(Rect r, List<Rect> placed) {
+        for (Rect o : placed) {
+            if (!Rect.intersects(r, o)) continue;
+            final int left = r.right - o.left;
+            final int right = o.right - r.left;
+            final int up = r.bottom - o.top;
+            final int down = o.bottom - r.top;
+            final int min = Math.min(Math.min(left, right), Math.min(up, down));
+            if (min == left) r.offset(-left, 0);
+            else if (min == right) r.offset(right, 0);
+            else if (min == up) r.offset(0, -up);
+            else r.offset(0, down);
+            return true;
+        }
+        return false;
+    }
+
+    private void clamp(Rect r) {
+        final int dx = r.left < 0 ? -r.left : Math.min(0, host.screenWidth() - r.right);
+        final int dy = r.top < 0 ? -r.top : Math.min(0, host.screenHeight() - r.bottom);
+        r.offset(dx, dy);
+    }
+}
@@ -0,0 +1,57 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.embedding.engine.plugins.util.GeneratedPluginRegister;
+
+/**
+ * Registers plugins on an overlay engine.
+ * Without an allowlist every generated plugin of the host app is registered (camera, maps, ...),
+ * with one only the listed plugin classes are instantiated, plus this plugin which overlays always need.
+ */
+final class OverlayPluginRegistrar {
+    private static final String TAG = "OverlayPluginRegistrar";
+
+    private OverlayPluginRegistrar() {}
+
+    /**
+     * @param allowlist fully-qualified {@link FlutterPlugin} class names, or null for all generated plugins
+     * @return the number of plugins added by this call, -1 when the generated registrant was used
+     */
+    static int register(@NonNull FlutterEngine engine, @Nullable List<String> allowlist) {
+        if (allowlist == null) {
+            GeneratedPluginRegister.registerGeneratedPlugins(engine);
+            return -1;
+        }
+        int added = 0;
+        if (!engine.getPlugins().has(FlutterOverlayWindowPlugin.class)) {
+            engine.getPlugins().add(new FlutterOverlayWindowPlugin());
+            added++;
+        }
+        for (String className : allowlist) {
+            if (className == null || className.isEmpty()) continue;
+            try {
+                Class<?> cls = Class.forName(className);
+                if (!FlutterPlugin.class.isAssignableFrom(cls)) {
+                    Log.w(TAG, className + " is not a FlutterPlugin, skipping");
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                Class<? extends FlutterPlugin> pluginClass = (Class<? extends FlutterPlugin>) cls;
+                if (engine.getPlugins().has(pluginClass)) continue;
+                engine.getPlugins().add(pluginClass.getDeclaredConstructor().newInstance());
+                added++;
+            } catch (Throwable t) {
+                Log.e(TAG, "Error registering plugin " + className, t);
+            }
+        }
+        return added;
+    }
+}
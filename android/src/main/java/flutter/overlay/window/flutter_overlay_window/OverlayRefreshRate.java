@@ -0,0 +1,72 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Build;
+import android.view.Display;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Refresh rate requested by one overlay window through preferredRefreshRate.
+ * "adaptive" asks for the display's fastest mode while the overlay is dragged, snapped or
+ * animated and drops back to idleRate once settled for {@link #SETTLE_MS}; "max" always asks for
+ * the fastest mode; "system" never asks (0 lets the system pick). Main thread only.
+ */
+final class OverlayRefreshRate {
+    static final String ADAPTIVE = "adaptive";
+    static final String MAX = "max";
+    static final String SYSTEM = "system";
+
+    /// Drops back only after this long without interaction, so a drag turning into a snap doesn't switch modes twice
+    static final long SETTLE_MS = 300;
+
+    // Static so they can be configured before the service is started, used by new overlays
+    static volatile String defaultPolicy = ADAPTIVE;
+    static volatile float defaultIdleRate = 0f;
+
+    String policy = defaultPolicy;
+    float idleRate = defaultIdleRate;   // Hz, 0 = system default
+    float requested;                    // what the window currently asks for
+    int changes;
+    Runnable settle;                    // set by OverlayService, posted to drop back
+
+    /// Fastest refresh rate of the display at its current resolution
+    static float maxRate(Display display) {
+        float max = display.getRefreshRate();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Display.Mode current = display.getMode();
+            for (Display.Mode mode : display.getSupportedModes()) {
+                if (mode.getPhysicalWidth() == current.getPhysicalWidth()
+                        && mode.getPhysicalHeight() == current.getPhysicalHeight()) {
+                    max = Math.max(max, mode.getRefreshRate());
+                }
+            }
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            //noinspection deprecation
+            for (float rate : display.getSupportedRefreshRates()) max = Math.max(max, rate);
+        }
+        return max;
+    }
+
+    float target(boolean active, Display display) {
+        switch (policy) {
+            case SYSTEM:
+                return 0f;
+            case MAX:
+                return maxRate(display);
+            default:
+                return active ? maxRate(display) : idleRate;
+        }
+    }
+
+    Map<String, Object> toMap(Display display) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("policy", policy);
+        map.put("idleHz", (double) idleRate);
+        map.put("requestedHz", (double) requested);
+        map.put("displayHz", (double) display.getRefreshRate());
+        map.put("maxHz", (double) maxRate(display));
+        map.put("changes", changes);
+        return map;
+    }
+}
@@ -0,0 +1,378 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.app.ActivityManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.flutter.plugin.common.FlutterException;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMessageCodec;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * Separate-process mode: when the app's manifest gives OverlayService its own android:process,
+ * the service and the overlay engines live there and the main app talks to them through a
+ * Messenger binder. The app's GC pauses then don't stall overlay drags, and an overlay crash
+ * doesn't take the app down (the binding brings the service back).
+ *
+ * Protocol, one Message per exchange with a single byte[] in its data:
+ * {@link #CALL} a plugin method call encoded with StandardMethodCodec, answered by {@link #RESULT}
+ * with the encoded envelope (null: not implemented); {@link #MESSAGE} a shareData message,
+ * already JSON-encoded, in either direction; {@link #EVENT} an overlayEvents map, service to app.
+ * Everything runs on the main thread of each process.
+ */
+final class OverlayRemote {
+    private static final String TAG = "OverlayRemote";
+
+    static final String ACTION_BIND = "flutter.overlay.window.flutter_overlay_window.BIND_REMOTE";
+
+    static final int HELLO = 1;
+    static final int CALL = 2;
+    static final int RESULT = 3;
+    static final int MESSAGE = 4;
+    static final int EVENT = 5;
+
+    private static final String DATA = "d";
+    private static final int BACKLOG = 64;
+
+    /// Plugin methods served by OverlayService's statics, the others (permissions, PiP, ...) stay in the app
+    private static final Set<String> FORWARDED = new HashSet<>(Arrays.asList(
+            "getEngineStartupBreakdown", "getOverlayLaunchMetrics", "configureWatchdog", "getOverlayHealth",
+            "getOverlayStats", "configureSnapshotCache", "getSnapshotCacheStats", "configureLayoutGroup",
+            "setSnapTargets", "setOverlayLayout", "configureRefreshRate", "dumpFlightRecorder",
+            "getOverlayFrameMetrics", "isOverlayActive", "moveOverlay", "moveOverlayAbsolute", "getScreenSize",
+            "getOverlayPosition", "closeOverlay", "closeAllOverlays", "resizeOverlay", "configureScheduler",
+            "getSchedulerState", "startTraceRecording", "stopTraceRecording", "replayTrace",
+            "configurePerformanceHud"));
+
+    private static Boolean separate;
+
+    private OverlayRemote() {}
+
+    /// true when OverlayService is declared in another process than the calling one
+    static boolean isSeparate(@NonNull Context context) {
+        if (separate != null) return separate;
+        String serviceProcess = null;
+        try {
+            ServiceInfo info = context.getPackageManager()
+                    .getServiceInfo(new ComponentName(context, OverlayService.class), 0);
+            serviceProcess = info.processName;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "OverlayService isn't declared in the manifest");
+        }
+        separate = serviceProcess != null && !serviceProcess.equals(processName(context));
+        return separate;
+    }
+
+    private static String processName(Context context) {
+        final int pid = Process.myPid();
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        List<ActivityManager.RunningAppProcessInfo> processes = am != null ? am.getRunningAppProcesses() : null;
+        if (processes != null) {
+            for (ActivityManager.RunningAppProcessInfo p : processes) {
+                if (p.pid == pid) return p.processName;
+            }
+        }
+        return context.getApplicationInfo().processName;
+    }
+
+    static boolean forwards(String method) {
+        return FORWARDED.contains(method);
+    }
+
+    private static Message message(int what, int arg, @Nullable ByteBuffer encoded) {
+        Message m = Message.obtain(null, what, arg, 0);
+        Bundle data = new Bundle();
+        if (encoded != null) {
+            // Flutter's codecs leave the position at the end of the encoded bytes
+            byte[] bytes = new byte[encoded.position()];
+            ByteBuffer src = encoded.duplicate();
+            src.flip();
+            src.get(bytes);
+            data.putByteArray(DATA, bytes);
+        }
+        m.setData(data);
+        return m;
+    }
+
+    @Nullable
+    private static byte[] bytesOf(Message m) {
+        return m.getData().getByteArray(DATA);
+    }
+
+    /// A direct buffer as the engine expects for a send: position at the end of the bytes
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer b = ByteBuffer.allocateDirect(bytes.length);
+        b.put(bytes);
+        return b;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // App side
+
+    private static Client client;
+
+    static Client client(@NonNull Context context) {
+        if (client == null) client = new Client(context.getApplicationContext());
+        return client;
+    }
+
+    /** The main app's connection to the service process. */
+    static final class Client extends Handler implements ServiceConnection {
+        private final Context context;
+        private final Messenger replies = new Messenger(this);
+        private final SparseArray<MethodChannel.Result> pending = new SparseArray<>();
+        private final List<Message> queued = new ArrayList<>();
+        @Nullable
+        private Messenger service;
+        private boolean bound;
+        private int nextId;
+
+        Client(Context context) {
+            super(Looper.getMainLooper());
+            this.context = context;
+        }
+
+        /// Without BIND_AUTO_CREATE: connects whenever the service is started (showOverlay, prewarm, a
+        /// restart after a crash) without starting it, or its foreground notification, on its own.
+        void bind() {
+            if (bound) return;
+            Intent intent = new Intent(context, OverlayService.class).setAction(ACTION_BIND);
+            bound = context.bindService(intent, this, 0);
+            if (!bound) Log.e(TAG, "Can't bind OverlayService");
+        }
+
+        void unbind() {
+            if (!bound) return;
+            context.unbindService(this);
+            bound = false;
+            service = null;
+            failPending("UNBOUND");
+        }
+
+        private void send(Message m) {
+            if (service == null) {
+                queued.add(m);
+                return;
+            }
+            m.replyTo = replies;
+            try {
+                service.send(m);
+            } catch (RemoteException e) {
+                // The service died, onServiceDisconnected fails the pending calls
+                Log.w(TAG, "Service process is gone", e);
+            }
+        }
+
+        /// Main thread: runs a plugin method call in the service process
+        void invoke(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+            if (service == null && !call.method.startsWith("configure")) {
+                // Same answer as the in-process statics give while the service isn't running;
+                // configure* calls are kept for when it is, like the in-process defaults
+                result.success(null);
+                return;
+            }
+            final int id = ++nextId;
+            pending.put(id, result);
+            send(message(CALL, id, StandardMethodCodec.INSTANCE.encodeMethodCall(call)));
+        }
+
+        /// Any thread: a shareData message, JSON-encoded
+        void sendMessage(@NonNull ByteBuffer encoded) {
+            final Message m = message(MESSAGE, 0, encoded);
+            post(() -> send(m));
+        }
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = new Messenger(binder);
+            send(Message.obtain(null, HELLO));
+            List<Message> backlog = new ArrayList<>(queued);
+            queued.clear();
+            for (Message m : backlog) send(m);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // Crashed or killed: the binding restarts it and onServiceConnected runs again
+            service = null;
+            failPending("SERVICE_DIED");
+            Map<String, Object> event = new HashMap<>();
+            event.put("process", name.getClassName());
+            OverlayEvents.emit("overlayProcessDied", null, event);
+        }
+
+        private void failPending(String code) {
+            for (int i = 0; i < pending.size(); i++) {
+                pending.valueAt(i).error(code, "Overlay service process is not available", null);
+            }
+            pending.clear();
+        }
+
+        @Override
+        public void handleMessage(@NonNull Message m) {
+            final byte[] bytes = bytesOf(m);
+            switch (m.what) {
+                case RESULT: {
+                    MethodChannel.Result result = pending.get(m.arg1);
+                    if (result == null) return;
+                    pending.remove(m.arg1);
+                    if (bytes == null) {
+                        result.notImplemented();
+                        return;
+                    }
+                    try {
+                        result.success(StandardMethodCodec.INSTANCE.decodeEnvelope(ByteBuffer.wrap(bytes)));
+                    } catch (FlutterException e) {
+                        result.error(e.code, e.getMessage(), e.details);
+                    }
+                    break;
+                }
+                case MESSAGE:
+                    // From an overlay to the app, already encoded
+                    if (bytes != null && WindowSetup.binaryMessenger != null) {
+                        WindowSetup.binaryMessenger.send(OverlayConstants.MESSENGER_TAG, direct(bytes));
+                    }
+                    break;
+                case EVENT:
+                    if (bytes != null) {
+                        Object event = StandardMessageCodec.INSTANCE.decodeMessage(ByteBuffer.wrap(bytes));
+                        if (!(event instanceof Map)) break;
+                        Map<?, ?> map = (Map<?, ?>) event;
+                        if ("admission".equals(map.get("type"))) {
+                            // The showOverlay call waiting in this process
+                            OverlayScheduler.complete((String) map.get("requestId"), (String) map.get("status"));
+                        }
+                        OverlayEvents.dispatchForwarded(map);
+                    }
+                    break;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Service side
+
+    /** OverlayService's end: runs the app's calls and sends overlay messages and events back. */
+    static final class Server extends Handler {
+        private final FlutterOverlayWindowPlugin plugin;
+        final Messenger messenger = new Messenger(this);
+        @Nullable
+        private Messenger app;
+        // Sent before the app's HELLO, e.g. the admission of the overlay that started the service
+        private final List<Message> backlog = new ArrayList<>();
+
+        Server(@NonNull Context context) {
+            super(Looper.getMainLooper());
+            plugin = new FlutterOverlayWindowPlugin(context);
+            OverlayEvents.forwarder = event -> {
+                final Message e = message(EVENT, 0, StandardMessageCodec.INSTANCE.encodeMessage(event));
+                post(() -> reply(e));
+            };
+        }
+
+        boolean hasApp() {
+            return app != null;
+        }
+
+        /// The app unbound or died; what is sent meanwhile waits for its next HELLO
+        void disconnect() {
+            app = null;
+            backlog.clear();
+        }
+
+        /// Service destroyed
+        void close() {
+            disconnect();
+            OverlayEvents.forwarder = null;
+        }
+
+        private void reply(Message m) {
+            final Messenger to = app;
+            if (to == null) {
+                if (backlog.size() < BACKLOG) backlog.add(m);
+                return;
+            }
+            try {
+                to.send(m);
+            } catch (RemoteException e) {
+                Log.w(TAG, "App process is gone", e);
+                disconnect();
+            }
+        }
+
+        /// Any thread: a message from an overlay, JSON-encoded
+        void sendMessage(@NonNull ByteBuffer encoded) {
+            final Message m = message(MESSAGE, 0, encoded);
+            post(() -> reply(m));
+        }
+
+        @Override
+        public void handleMessage(@NonNull Message m) {
+            switch (m.what) {
+                case HELLO: {
+                    app = m.replyTo;
+                    List<Message> pending = new ArrayList<>(backlog);
+                    backlog.clear();
+                    for (Message p : pending) reply(p);
+                    break;
+                }
+                case CALL: {
+                    final int id = m.arg1;
+                    final byte[] bytes = bytesOf(m);
+                    if (bytes == null) return;
+                    MethodCall call = StandardMethodCodec.INSTANCE.decodeMethodCall(ByteBuffer.wrap(bytes));
+                    plugin.onMethodCall(call, new MethodChannel.Result() {
+                        @Override
+                        public void success(@Nullable Object result) {
+                            reply(message(RESULT, id, StandardMethodCodec.INSTANCE.encodeSuccessEnvelope(result)));
+                        }
+
+                        @Override
+                        public void error(@NonNull String code, @Nullable String msg, @Nullable Object details) {
+                            reply(message(RESULT, id, StandardMethodCodec.INSTANCE.encodeErrorEnvelope(code, msg, details)));
+                        }
+
+                        @Override
+                        public void notImplemented() {
+                            reply(message(RESULT, id, null));
+                        }
+                    });
+                    break;
+                }
+                case MESSAGE: {
+                    final byte[] bytes = bytesOf(m);
+                    if (bytes != null) OverlayService.sendEncodedToAll(direct(bytes), bytes.length);
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Admission control for showOverlay: at most {@link #maxLive} overlays on screen and at most
+ * {@link #maxBoots} of them booting (engine started, first frame not rendered yet) at a time.
+ * Requests over the limits wait in a queue ordered by priority then arrival, and the head is
+ * never skipped, so the same requests always get the same outcome. With {@link #preempt}, a
+ * request may close the lowest-priority idle overlay below it instead of waiting.
+ * Every request ends with exactly one of {@link #SHOWN}, {@link #REJECTED}, {@link #SUPERSEDED}
+ * or {@link #CANCELLED}, returned by showOverlay and sent as an "admission" event. Main thread only.
+ */
+final class OverlayScheduler {
+    static final String SHOWN = "shown";
+    static final String REJECTED = "rejected";         // queue full
+    static final String SUPERSEDED = "superseded";     // a newer showOverlay of the same engineId
+    static final String CANCELLED = "cancelled";       // closed before it was shown
+
+    static final String EXTRA_ADMITTED = "overlayAdmitted";
+    static final String EXTRA_REQUEST_ID = "requestId";
+    static final String EXTRA_PRIORITY = "priority";
+
+    /// A boot that hasn't rendered by then stops holding its slot
+    static final long BOOT_TIMEOUT_MS = 5000;
+
+    // Static so they can be configured before the service is started, 0 = no limit
+    static volatile int maxLive = 0;
+    static volatile int maxBoots = 2;
+    static volatile int maxQueued = 16;
+    static volatile boolean preempt = false;
+
+    interface Host {
+        /// engineIds with a window, booting ones included
+        List<String> live();
+
+        int priority(String engineId);
+
+        /// not dragged, snapped or animated
+        boolean isIdle(String engineId);
+
+        /// Runs the show Intent again, now admitted
+        void start(Intent intent);
+
+        /// Closes a live overlay to make room
+        void preempt(String engineId);
+    }
+
+    private static final class Request {
+        final String engineId;
+        final int priority;
+        final long seq;
+        final Intent intent;
+        @Nullable
+        final String requestId;
+
+        Request(String engineId, int priority, long seq, Intent intent, @Nullable String requestId) {
+            this.engineId = engineId;
+            this.priority = priority;
+            this.seq = seq;
+            this.intent = intent;
+            this.requestId = requestId;
+        }
+    }
+
+    /// Results of the app's showOverlay calls, by request id
+    private static final ConcurrentHashMap<String, MethodChannel.Result> pending = new ConcurrentHashMap<>();
+
+    private final Host host;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Request> queue = new ArrayList<>();
+    private final Map<String, Request> booting = new HashMap<>();
+    private final Map<String, Long> admittedSeq = new HashMap<>();   // live overlays, by admission order
+    private final Map<String, List<String>> joined = new HashMap<>(); // request ids waiting for an existing window's first frame
+    private long nextSeq;
+    private boolean pumping;
+    private int preempted;
+    private int rejected;
+
+    OverlayScheduler(@NonNull Host host) {
+        this.host = host;
+    }
+
+    /// Called by the plugin before it sends the show Intent
+    static void await(String requestId, MethodChannel.Result result) {
+        pending.put(requestId, result);
+    }
+
+    /// The show Intent couldn't be sent: the pending result, for the caller to fail, or null if already answered
+    @Nullable
+    static MethodChannel.Result forget(String requestId) {
+        return pending.remove(requestId);
+    }
+
+    /// Completes the app's showOverlay call; in separate-process mode from the forwarded event
+    static void complete(@Nullable String requestId, String status) {
+        if (requestId == null) return;
+        MethodChannel.Result result = pending.remove(requestId);
+        if (result != null) result.success(status);
+    }
+
+    /// Final outcome of a request: the "admission" event, then the showOverlay result
+    static void resolve(String engineId, @Nullable String requestId, String status) {
+        if (requestId == null) return;
+        Map<String, Object> event = new HashMap<>();
+        event.put("requestId", requestId);
+        event.put("status", status);
+        OverlayEvents.emit("admission", engineId, event);
+        complete(requestId, status);
+    }
+
+    private static void resolve(@Nullable Request r, String status) {
+        if (r != null) resolve(r.engineId, r.requestId, status);
+    }
+
+    /// Queues a show Intent; it is started now or once there is room
+    void request(String engineId, Intent intent) {
+        final int priority = intent.getIntExtra(EXTRA_PRIORITY, 0);
+        Request r = new Request(engineId, priority, nextSeq++, intent, intent.getStringExtra(EXTRA_REQUEST_ID));
+        for (int i = 0; i < queue.size(); i++) {
+            if (queue.get(i).engineId.equals(engineId)) {
+                resolve(queue.remove(i), SUPERSEDED);
+                break;
+            }
+        }
+        int at = 0;
+        while (at < queue.size() && outranks(queue.get(at), r)) at++;
+        queue.add(at, r);
+        final int limit = maxQueued;
+        if (limit > 0 && queue.size() > limit) {
+            rejected++;
+            resolve(queue.remove(queue.size() - 1), REJECTED);
+        }
+        pump();
+    }
+
+    private static boolean outranks(Request a, Request b) {
+        return a.priority != b.priority ? a.priority > b.priority : a.seq < b.seq;
+    }
+
+    /// Starts queued requests in order while the head fits (also after the limits change)
+    void pump() {
+        // A preempted overlay is removed synchronously and would pump again from onRemoved
+        if (pumping) return;
+        pumping = true;
+        try {
+            drainQueue();
+        } finally {
+            pumping = false;
+        }
+    }
+
+    private void drainQueue() {
+        while (!queue.isEmpty()) {
+            Request head = queue.get(0);
+            final int boots = maxBoots;
+            if (boots > 0 && booting.size() >= boots) return;
+            final int live = maxLive;
+            if (live > 0 && host.live().size() >= live && !makeRoom(head)) return;
+            queue.remove(0);
+            Request replaced = booting.put(head.engineId, head);
+            if (replaced != null) {
+                handler.removeCallbacksAndMessages(replaced);
+                resolve(replaced, SUPERSEDED);
+            }
+            admittedSeq.put(head.engineId, head.seq);
+            // Keyed on the request, a later boot of the same engineId keeps its own timeout
+            handler.postAtTime(() -> {
+                if (booting.get(head.engineId) == head) onBooted(head.engineId);
+            }, head, SystemClock.uptimeMillis() + BOOT_TIMEOUT_MS);
+            Intent admitted = new Intent(head.intent);
+            admitted.putExtra(EXTRA_ADMITTED, true);
+            host.start(admitted);
+        }
+    }
+
+    /// Preempts the lowest-priority idle overlay below r, oldest first
+    private boolean makeRoom(Request r) {
+        if (!preempt) return false;
+        String victim = null;
+        int victimPriority = Integer.MAX_VALUE;
+        long victimSeq = Long.MAX_VALUE;
+        for (String id : host.live()) {
+            if (booting.containsKey(id) || !host.isIdle(id)) continue;
+            final int p = host.priority(id);
+            if (p >= r.priority) continue;
+            Long seq = admittedSeq.get(id);
+            final long s = seq != null ? seq : -1;
+            if (p < victimPriority || (p == victimPriority && s < victimSeq)) {
+                victim = id;
+                victimPriority = p;
+                victimSeq = s;
+            }
+        }
+        if (victim == null) return false;
+        preempted++;
+        Map<String, Object> event = new HashMap<>();
+        event.put("by", r.engineId);
+        OverlayEvents.emit("preempted", victim, event);
+        host.preempt(victim);
+        return true;
+    }
+
+    /// showOverlay of an overlay that already has a window: shown once that window has rendered.
+    /// Such a request takes no slot, its window is already counted.
+    void join(String engineId, @Nullable String requestId, boolean rendered) {
+        if (requestId == null) return;
+        if (rendered) {
+            resolve(engineId, requestId, SHOWN);
+            return;
+        }
+        List<String> ids = joined.get(engineId);
+        if (ids == null) {
+            ids = new ArrayList<>();
+            joined.put(engineId, ids);
+        }
+        ids.add(requestId);
+        handler.postAtTime(() -> {
+            List<String> waiting = joined.get(engineId);
+            if (waiting != null && waiting.remove(requestId)) resolve(engineId, requestId, SHOWN);
+        }, requestId, SystemClock.uptimeMillis() + BOOT_TIMEOUT_MS);
+    }
+
+    private void resolveJoined(String engineId, String status) {
+        List<String> ids = joined.remove(engineId);
+        if (ids == null) return;
+        for (String requestId : ids) {
+            handler.removeCallbacksAndMessages(requestId);
+            resolve(engineId, requestId, status);
+        }
+    }
+
+    /// First frame rendered (or the boot timed out): its slot is free
+    void onBooted(String engineId) {
+        resolveJoined(engineId, SHOWN);
+        Request r = booting.remove(engineId);
+        if (r == null) return;
+        handler.removeCallbacksAndMessages(r);
+        resolve(r, SHOWN);
+        pump();
+    }
+
+    /// The window is gone; a request still waiting for it is cancelled
+    void onRemoved(String engineId) {
+        admittedSeq.remove(engineId);
+        resolveJoined(engineId, CANCELLED);
+        Request r = booting.remove(engineId);
+        if (r != null) {
+            handler.removeCallbacksAndMessages(r);
+            resolve(r, CANCELLED);
+        }
+        pump();
+    }
+
+    /// closeOverlay of an overlay that is still queued
+    void cancel(String engineId) {
+        for (int i = 0; i < queue.size(); i++) {
+            if (queue.get(i).engineId.equals(engineId)) {
+                resolve(queue.remove(i), CANCELLED);
+                return;
+            }
+        }
+    }
+
+    /// Service going away: nothing queued will ever start
+    void clear() {
+        handler.removeCallbacksAndMessages(null);
+        for (Request r : queue) resolve(r, CANCELLED);
+        for (Request r : booting.values()) resolve(r, CANCELLED);
+        for (Map.Entry<String, List<String>> e : joined.entrySet()) {
+            for (String requestId : e.getValue()) resolve(e.getKey(), requestId, CANCELLED);
+        }
+        joined.clear();
+        queue.clear();
+        booting.clear();
+        admittedSeq.clear();
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        List<String> queued = new ArrayList<>();
+        for (Request r : queue) queued.add(r.engineId);
+        map.put("live", host.live().size());
+        map.put("booting", new ArrayList<>(booting.keySet()));
+        map.put("queued", queued);
+        map.put("preempted", preempted);
+        map.put("rejected", rejected);
+        map.put("maxLive", maxLive);
+        map.put("maxBoots", maxBoots);
+        map.put("maxQueued", maxQueued);
+        map.put("preempt", preempt);
+        return map;
+    }
+}
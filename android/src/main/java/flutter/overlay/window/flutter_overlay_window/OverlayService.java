@@ -1,4 +1,6 @@
 package flutter.overlay.window.flutter_overlay_window;
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
 import android.animation.AnimatorSet;
 import android.view.animation.AccelerateDecelerateInterpolator;
@@ -15,9 +17,11 @@ import android.graphics.Color;
 import android.graphics.PixelFormat;
 import android.app.PendingIntent;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.TypedValue;
@@ -26,17 +30,23 @@ import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.WindowManager;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.core.app.NotificationCompat;
 
+import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
 import io.flutter.embedding.android.FlutterView;
 import io.flutter.FlutterInjector;
@@ -44,11 +54,13 @@ import io.flutter.embedding.engine.FlutterEngine;
 import io.flutter.embedding.engine.FlutterEngineCache;
 import io.flutter.embedding.engine.dart.DartExecutor;
 import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.JSONMessageCodec;
+import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-import io.flutter.embedding.engine.plugins.util.GeneratedPluginRegister;
 import io.flutter.embedding.android.FlutterSurfaceView;
+import io.flutter.embedding.engine.renderer.FlutterUiDisplayListener;
 
 // Inside OverlayService.java (top-level, e.g. above the Service class or as a static inner class)
 final class EngineConfig {
@@ -62,6 +74,31 @@ final class EngineConfig {
     String overlayTitle;
     String overlayContent;
 
+    // Engine bootstrap
+    String entrypoint = "overlayMain";
+    String initialRoute;                 // optional
+    ArrayList<String> dartArgs;          // optional
+    ArrayList<String> pluginAllowlist;   // null = all generated plugins
+
+    // Touchable regions published by Dart, in view px; null = the whole window is touchable
+    ArrayList<Rect> touchRegions;
+    boolean regionsBlockTouch;           // empty region set: the window is FLAG_NOT_TOUCHABLE
+    boolean rejectingGesture;            // current gesture started outside every region
+
+    boolean autoImeFocus = true;         // become focusable natively while text input is active
+    boolean imeFocused;
+
+    // Multi-overlay layout, see OverlayLayoutManager
+    String layoutGroup;                  // stacking group, null = free
+    boolean avoidOverlap;                // pushed out of other overlays after it or they move
+    int layoutOrder;                     // initial position within its group
+
+    OverlaySnapTargets snapTargets;      // null = only positionGravity snapping
+
+    final OverlayRefreshRate refreshRate = new OverlayRefreshRate();
+
+    int priority;                        // admission and preemption, see OverlayScheduler
+
     EngineConfig() {}
 }
 
@@ -79,19 +116,35 @@ public class OverlayService extends Service implements View.OnTouchListener {
 
     // Engine config (coming from Intent extras)
     private String engineId = OverlayConstants.CACHED_TAG; // default cache key
-    private String entrypoint = "overlayMain";            // default dart entrypoint
-    private String initialRoute = null;                   // optional
-    private ArrayList<String> dartArgs = null;            // optional
 
     public static final String INTENT_EXTRA_IS_CLOSE_WINDOW = "IsCloseWindow";
+    public static final String INTENT_EXTRA_PREWARM = "IsPrewarm";
 
-    private static OverlayService instance;
-    public static boolean isRunning = false;
+    // Written on the main thread, read from any thread by the static entry points
+    private static volatile OverlayService instance;
+    public static volatile boolean isRunning = false;
+    // Every overlay operation runs through here, see OverlayCommandExecutor
+    private static final OverlayCommandExecutor commands = new OverlayCommandExecutor();
     // Per-engine state
     private final ConcurrentHashMap<String, FlutterEngine> engines = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, FlutterView> views = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, MethodChannel> channels = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, BasicMessageChannel<Object>> messengers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, EngineStartupTrace> startupTraces = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, OverlayLaunchMetrics> launchMetrics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, OverlayFrameMetrics> frameMetrics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, OverlayStats> stats = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Intent> showIntents = new ConcurrentHashMap<>(); // replayed on recreate
+    private OverlayWatchdog watchdog;
+    private OverlaySessionStore sessionStore;
+    private OverlaySnapshotCache snapshots;
+    private OverlayLayoutManager layout;
+    private OverlayScheduler scheduler;
+    private OverlayHud hud;
+    @Nullable
+    private OverlayRemote.Server remote;   // set when the app binds from another process
+    private static final String SNAPSHOT_PLACEHOLDER_TAG = "overlaySnapshotPlaceholder";
+    private long loaderInitNanos = 0;
     private WindowManager windowManager = null; // shared system service
     private int clickableFlag = WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
             WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN;
@@ -105,6 +158,13 @@ public class OverlayService extends Service implements View.OnTouchListener {
     private Timer mTrayAnimationTimer;
     private TrayAnimationTimerTask mTrayTimerTask;
 
+    interface TimerFactory {
+        Timer create();
+    }
+
+    /// Timer of the snap animation; the JVM test harness swaps in one it ticks by hand
+    static TimerFactory animationTimers = Timer::new;
+
     public static Map<String, Object> getScreenSize() {
         if (instance == null || instance.windowManager == null || instance.mResources == null) {
             return null;
@@ -126,7 +186,7 @@ public class OverlayService extends Service implements View.OnTouchListener {
         return size;
     }
 
-    private int mapFlagFromString(String flagStr) {
+    private static int mapFlagFromString(String flagStr) {
         // Mirror your existing WindowSetup.setFlag mapping
         if (flagStr == null) return WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE;
         // Minimal mapper (extend to your full set):
@@ -135,6 +195,9 @@ public class OverlayService extends Service implements View.OnTouchListener {
                 // Focusable so TextFields can request IME,
                 // but NOT_TOUCH_MODAL so taps outside go to underlying apps.
                 return WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL;
+            case "clickThrough":
+            case "flagNotTouchable":
+                return WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE;
             case "defaultFlag":
             case "flagNotFocusable":
             default:
@@ -142,12 +205,48 @@ public class OverlayService extends Service implements View.OnTouchListener {
         }
     }
 
+    /// Callable from any thread. The message is encoded once and logged on the caller's thread
+    /// (the messenger's background task queue), only the binary sends are posted to main.
     public static void sendToAll(Object message) {
         if (instance == null) return;
+        final ByteBuffer encoded = JSONMessageCodec.INSTANCE.encodeMessage(message);
+        // The codec leaves the position at the end of the encoded bytes
+        sendEncodedToAll(encoded, encoded != null ? encoded.position() : 0);
+    }
+
+    /// A message already JSON-encoded, by sendToAll or by the app process in separate-process mode
+    static void sendEncodedToAll(ByteBuffer encoded, int size) {
+        final OverlayService service = instance;
+        if (service == null) return;
+        OverlayTrace.message(encoded);
         // Loop through all the registered messengers and send the message.
-        for (Map.Entry<String, BasicMessageChannel<Object>> e : instance.messengers.entrySet()) {
-            Log.d("OverlayService","send to " + e.getKey() + ": " + message);
-            e.getValue().send(message);
+        final ArrayList<String> targets = new ArrayList<>(service.messengers.keySet());
+        for (String id : targets) {
+            OverlayFlightRecorder.record(OverlayFlightRecorder.MESSAGE_SEND, id, size, 0);
+            OverlayStats s = service.stats.get(id);
+            if (s != null) s.onMessageIn(size);
+        }
+        commands.execute(() -> {
+            for (String id : targets) {
+                FlutterEngine engine = service.engines.get(id);
+                if (engine != null) engine.getDartExecutor().send(OverlayConstants.MESSENGER_TAG + "/" + id, encoded);
+            }
+        });
+    }
+
+    /// Sends an already encoded message from any thread; platform messages can only be dispatched on main
+    static void postSend(@Nullable BinaryMessenger messenger, String channel, @Nullable ByteBuffer encoded) {
+        if (messenger == null) return;
+        commands.execute(() -> messenger.send(channel, encoded));
+    }
+
+    /// Task queue running a channel's handler off the main thread, null (main) on embeddings without one
+    @Nullable
+    static BinaryMessenger.TaskQueue backgroundQueue(BinaryMessenger messenger) {
+        try {
+            return messenger.makeBackgroundTaskQueue();
+        } catch (UnsupportedOperationException e) {
+            return null;
         }
     }
 
@@ -184,16 +283,252 @@ public class OverlayService extends Service implements View.OnTouchListener {
         return instance != null && instance.views.containsKey(engineId);
     }
 
+    public static Map<String, Object> getStartupTrace(String engineId) {
+        if (instance == null) return null;
+        EngineStartupTrace trace = instance.startupTraces.get(engineId);
+        return trace != null ? trace.toMap() : null;
+    }
+
+    public static Map<String, Object> getLaunchMetrics(String engineId) {
+        if (instance == null) return null;
+        OverlayLaunchMetrics metrics = instance.launchMetrics.get(engineId);
+        return metrics != null ? metrics.toMap() : null;
+    }
+
+    public static Map<String, Object> getFrameMetrics(String engineId, boolean reset) {
+        if (instance == null) return null;
+        OverlayFrameMetrics metrics = instance.frameMetrics.get(engineId);
+        if (metrics == null) return null;
+        Map<String, Object> map = metrics.toMap();
+        if (reset) metrics.reset();
+        EngineConfig cfg = instance.configs.get(engineId);
+        if (cfg != null && instance.windowManager != null) {
+            map.put("refreshRate", cfg.refreshRate.toMap(instance.windowManager.getDefaultDisplay()));
+        }
+        return map;
+    }
+
+    /// Limits of OverlayScheduler, 0 = no limit; applies to the queue right away
+    public static void configureScheduler(int maxLive, int maxBoots, int maxQueued, boolean preempt) {
+        OverlayScheduler.maxLive = Math.max(0, maxLive);
+        OverlayScheduler.maxBoots = Math.max(0, maxBoots);
+        OverlayScheduler.maxQueued = Math.max(0, maxQueued);
+        OverlayScheduler.preempt = preempt;
+        commands.execute(() -> {
+            if (instance != null && instance.scheduler != null) instance.scheduler.pump();
+        });
+    }
+
+    /// On-screen performance HUD, see OverlayHud. corner: topLeft, topRight, bottomLeft or bottomRight
+    public static void configureHud(boolean enabled, long intervalMs, @Nullable String corner) {
+        OverlayHud.enabled = enabled;
+        OverlayHud.intervalMs = Math.max(OverlayHud.MIN_INTERVAL_MS, intervalMs);
+        if (corner != null) OverlayHud.corner = corner;
+        commands.execute(() -> {
+            if (instance != null && instance.hud != null) instance.hud.apply();
+        });
+    }
+
+    public static Map<String, Object> getSchedulerState() {
+        return OverlayCommandExecutor.await(commands.submit(() -> {
+            final OverlayService service = instance;
+            return service != null && service.scheduler != null ? service.scheduler.toMap() : null;
+        }), null);
+    }
+
+    /// Starts recording an interaction trace, see OverlayTrace; false if one is already recording.
+    /// Screen size comes from the running service, else from the caller's display metrics.
+    public static boolean startTraceRecording(File file, int maxBytes, DisplayMetrics fallback) {
+        final OverlayService service = instance;
+        if (service != null && service.mResources != null) {
+            return OverlayTrace.start(file, maxBytes, service.szWindow.x, service.szWindow.y,
+                    service.mResources.getDisplayMetrics().density);
+        }
+        return OverlayTrace.start(file, maxBytes, fallback.widthPixels, fallback.heightPixels, fallback.density);
+    }
+
+    /// Replays a trace into the running service, the report is handed to callback once it's done.
+    /// false when the service isn't running or another replay is.
+    public static boolean replayTrace(OverlayTrace.Trace trace, double speed, OverlayTraceReplay.Callback callback) {
+        return OverlayCommandExecutor.await(commands.submit(() -> {
+            final OverlayService service = instance;
+            if (service == null) return false;
+            return OverlayTraceReplay.start(trace, service.traceTarget(), speed,
+                    service.szWindow.x, service.szWindow.y, callback);
+        }), false);
+    }
+
+    /// Refresh-rate policy of one overlay, or the default of the next ones when engineId is null.
+    /// idleRate in Hz, 0 lets the system pick.
+    public static boolean configureRefreshRate(@Nullable String engineId, String policy, float idleRate) {
+        return OverlayCommandExecutor.await(commands.submit(() -> applyConfigureRefreshRate(engineId, policy, idleRate)), false);
+    }
+
+    private static boolean applyConfigureRefreshRate(@Nullable String engineId, String policy, float idleRate) {
+        final String p = policy != null ? policy : OverlayRefreshRate.ADAPTIVE;
+        final float idle = Math.max(0f, idleRate);
+        if (engineId == null) {
+            OverlayRefreshRate.defaultPolicy = p;
+            OverlayRefreshRate.defaultIdleRate = idle;
+            return true;
+        }
+        if (instance == null) return false;
+        EngineConfig cfg = instance.configs.get(engineId);
+        if (cfg == null) return false;
+        cfg.refreshRate.policy = p;
+        cfg.refreshRate.idleRate = idle;
+        OverlayFrameMetrics metrics = instance.frameMetrics.get(engineId);
+        instance.applyRefreshRate(engineId, metrics != null && metrics.interaction() != OverlayFrameMetrics.IDLE);
+        return true;
+    }
+
+    public static void configureWatchdog(long intervalMs, long deadlineMs, int maxMisses, String restartPolicy) {
+        OverlayWatchdog.intervalMs = Math.max(0, intervalMs);
+        OverlayWatchdog.deadlineMs = Math.max(1, deadlineMs);
+        OverlayWatchdog.maxMisses = Math.max(1, maxMisses);
+        OverlayWatchdog.restartPolicy = restartPolicy != null ? restartPolicy : OverlayWatchdog.POLICY_NONE;
+        if (instance != null && instance.watchdog != null) instance.watchdog.start();
+    }
+
+    /// Stats of one engine, or of all of them keyed by engineId when engineId is null
+    public static Map<String, Object> getOverlayStats(@Nullable String engineId) {
+        if (instance == null) return null;
+        if (engineId != null) {
+            OverlayStats s = instance.stats.get(engineId);
+            return s != null ? s.toMap(instance.views.get(engineId)) : null;
+        }
+        Map<String, Object> all = new HashMap<>();
+        for (Map.Entry<String, OverlayStats> e : instance.stats.entrySet()) {
+            all.put(e.getKey(), e.getValue().toMap(instance.views.get(e.getKey())));
+        }
+        return all;
+    }
+
+    public static void configureSnapshotCache(boolean enabled, int budgetBytes, float scale) {
+        OverlaySnapshotCache.enabled = enabled;
+        OverlaySnapshotCache.budgetBytes = Math.max(0, budgetBytes);
+        OverlaySnapshotCache.scale = Math.min(1f, Math.max(0.05f, scale));
+        if (instance != null && instance.snapshots != null) instance.snapshots.applyBudget();
+    }
+
+    public static Map<String, Object> getSnapshotCacheStats() {
+        if (instance == null || instance.snapshots == null) return null;
+        return instance.snapshots.toMap();
+    }
+
+    /// dock: "none" | "left" | "right" | "top" | "bottom"; spacing and margin in dp
+    public static boolean configureLayoutGroup(String group, String dock, boolean vertical, int spacingDp, int marginDp) {
+        return OverlayCommandExecutor.await(commands.submit(() -> applyConfigureLayoutGroup(group, dock, vertical, spacingDp, marginDp)), false);
+    }
+
+    private static boolean applyConfigureLayoutGroup(String group, String dock, boolean vertical, int spacingDp, int marginDp) {
+        if (instance == null || instance.layout == null || group == null) return false;
+        OverlayLayoutManager.Group g = instance.layout.group(group);
+        g.dock = dock != null ? dock : "none";
+        g.vertical = vertical;
+        g.spacingPx = instance.dpToPx(Math.max(0, spacingDp));
+        g.marginPx = instance.dpToPx(Math.max(0, marginDp));
+        instance.layout.requestLayout(null);
+        return true;
+    }
+
+    /// Targets as sent by Dart: kind "point" (x, y), "edge" (edge) or "rect" (left, top, right, bottom),
+    /// with id, radius, priority and dismiss; coordinates in dp. Null or empty removes them.
+    public static boolean setSnapTargets(String engineId, @Nullable List<Map<String, Object>> raw) {
+        return OverlayCommandExecutor.await(commands.submit(() -> applySetSnapTargets(engineId, raw)), false);
+    }
+
+    private static boolean applySetSnapTargets(String engineId, @Nullable List<Map<String, Object>> raw) {
+        if (instance == null) return false;
+        EngineConfig cfg = instance.configs.get(engineId);
+        if (cfg == null) return false;
+        if (raw == null || raw.isEmpty()) {
+            cfg.snapTargets = null;
+            return true;
+        }
+        ArrayList<OverlaySnapTargets.Target> targets = new ArrayList<>(raw.size());
+        for (Map<String, Object> m : raw) {
+            OverlaySnapTargets.Target t = new OverlaySnapTargets.Target();
+            t.id = String.valueOf(m.get("id"));
+            t.radius = instance.dpToPx(intOf(m.get("radius"), 48));
+            t.priority = intOf(m.get("priority"), 0);
+            t.dismiss = Boolean.TRUE.equals(m.get("dismiss"));
+            final String kind = String.valueOf(m.get("kind"));
+            if ("edge".equals(kind)) {
+                t.kind = OverlaySnapTargets.EDGE;
+                t.edge = String.valueOf(m.get("edge"));
+            } else if ("rect".equals(kind)) {
+                t.kind = OverlaySnapTargets.RECT;
+                t.rect = new Rect(
+                        instance.dpToPx(intOf(m.get("left"), 0)), instance.dpToPx(intOf(m.get("top"), 0)),
+                        instance.dpToPx(intOf(m.get("right"), 0)), instance.dpToPx(intOf(m.get("bottom"), 0)));
+            } else {
+                t.kind = OverlaySnapTargets.POINT;
+                t.x = instance.dpToPx(intOf(m.get("x"), 0));
+                t.y = instance.dpToPx(intOf(m.get("y"), 0));
+            }
+            targets.add(t);
+        }
+        cfg.snapTargets = new OverlaySnapTargets(targets);
+        return true;
+    }
+
+    private static int intOf(@Nullable Object value, int fallback) {
+        return value instanceof Number ? (int) Math.round(((Number) value).doubleValue()) : fallback;
+    }
+
+    public static boolean setOverlayLayout(String engineId, @Nullable String group, boolean avoidOverlap, int order) {
+        return OverlayCommandExecutor.await(commands.submit(() -> applySetOverlayLayout(engineId, group, avoidOverlap, order)), false);
+    }
+
+    private static boolean applySetOverlayLayout(String engineId, @Nullable String group, boolean avoidOverlap, int order) {
+        if (instance == null || instance.layout == null) return false;
+        EngineConfig cfg = instance.configs.get(engineId);
+        if (cfg == null) return false;
+        cfg.layoutGroup = group;
+        cfg.avoidOverlap = avoidOverlap;
+        cfg.layoutOrder = order;
+        instance.layout.requestLayout(engineId);
+        return true;
+    }
+
+    /// Health of one engine, or of all of them keyed by engineId when engineId is null
+    public static Map<String, Object> getOverlayHealth(@Nullable String engineId) {
+        if (instance == null || instance.watchdog == null) return null;
+        return instance.watchdog.snapshot(engineId, engineId == null);
+    }
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        // Only bound by the app when this service runs in its own process
+        if (!OverlayRemote.ACTION_BIND.equals(intent.getAction())) return null;
+        if (remote == null) remote = new OverlayRemote.Server(this);
+        return remote.messenger.getBinder();
+    }
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        if (remote != null) remote.disconnect();
+        return false;
     }
 
     @RequiresApi(api = Build.VERSION_CODES.M)
     @Override
     public void onDestroy() {
         platformViewsReady = false;
+        if (watchdog != null) watchdog.stop();
+        if (sessionStore != null) {
+            // Stopped on purpose (closeAllOverlays), don't bring the overlays back
+            sessionStore.clear();
+            sessionStore.close();
+        }
+        if (snapshots != null) snapshots.close();
+        if (layout != null) layout.cancel();
+        if (scheduler != null) scheduler.clear();
+        if (hud != null) hud.hide();
+        if (remote != null) remote.close();
+        OverlayTraceReplay.cancel();
         Log.d("OverLay", "Destroying the overlay window service");
         try {
             for (Map.Entry<String, FlutterEngine> e : engines.entrySet()) {
@@ -211,6 +546,12 @@ public class OverlayService extends Service implements View.OnTouchListener {
         views.clear();
         channels.clear();
         messengers.clear();
+        startupTraces.clear();
+        launchMetrics.clear();
+        for (OverlayFrameMetrics m : frameMetrics.values()) m.stop();
+        frameMetrics.clear();
+        showIntents.clear();
+        stats.clear();
         isRunning = false;
         NotificationManager notificationManager = (NotificationManager) getApplicationContext().getSystemService(Context.NOTIFICATION_SERVICE);
         notificationManager.cancel(OverlayConstants.NOTIFICATION_ID);
@@ -226,46 +567,64 @@ public class OverlayService extends Service implements View.OnTouchListener {
                                         int durationMs,
                                         boolean anchorLeft,
                                         boolean anchorTop) {
-        if (instance == null) return false;
-        FlutterView v = instance.views.get(engineId);
-        if (v == null) return false;
-        // delegate to the real method; pass null for MethodChannel.Result
-        instance.resizeOverlayFor(engineId, v, width, height, enableDrag, durationMs, anchorLeft, anchorTop, null);
-        return true;
+        return OverlayCommandExecutor.await(commands.submit("resize:" + engineId, () -> {
+            final OverlayService service = instance;
+            if (service == null) return false;
+            FlutterView v = service.views.get(engineId);
+            if (v == null) return false;
+            // delegate to the real method; pass null for MethodChannel.Result
+            service.resizeOverlayFor(engineId, v, width, height, enableDrag, durationMs, anchorLeft, anchorTop, null);
+            return true;
+        }), false);
     }
 
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR1)
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        // Same queue as channel-driven commands: whatever was queued before this Intent is applied first
+        return OverlayCommandExecutor.await(commands.submit(() -> handleStartCommand(intent)), START_STICKY);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private int handleStartCommand(Intent intent) {
+        final long intentAt = System.nanoTime();
         mResources = getApplicationContext().getResources();
+        if (intent == null) {
+            // Sticky restart after the process was killed
+            restoreSession();
+            return START_STICKY;
+        }
 
         // Read optional engine configuration from the intent
         String extraEngineId = intent.getStringExtra("engineId");
-        String extraEntrypoint = intent.getStringExtra("entrypoint");
-        String extraInitialRoute = intent.getStringExtra("initialRoute");
-        ArrayList<String> extraDartArgs = intent.getStringArrayListExtra("dartArgs");
         if (extraEngineId != null && !extraEngineId.isEmpty()) engineId = extraEngineId;
-        if (extraEntrypoint != null && !extraEntrypoint.isEmpty()) entrypoint = extraEntrypoint;
-        if (extraInitialRoute != null && !extraInitialRoute.isEmpty()) initialRoute = extraInitialRoute;
-        if (extraDartArgs != null && !extraDartArgs.isEmpty()) dartArgs = extraDartArgs;
+        final String id = engineId;
 
         int startX = intent.getIntExtra("startX", OverlayConstants.DEFAULT_XY);
         int startY = intent.getIntExtra("startY", OverlayConstants.DEFAULT_XY);
         boolean isCloseWindow = intent.getBooleanExtra(INTENT_EXTRA_IS_CLOSE_WINDOW, false);
         if (isCloseWindow) {
-            if (windowManager != null && views.containsKey(engineId)) {
-                FlutterView v = views.get(engineId);
-                try { windowManager.removeView(v); } catch (Throwable ignored) {}
-                try { v.detachFromFlutterEngine(); } catch (Throwable ignored) {}
-                views.remove(engineId);
-                // Remove engine/channel/messenger as well if desired
-                engines.remove(engineId);
-                channels.remove(engineId);
-                messengers.remove(engineId);
-                configs.remove(engineId); // ← remove config too
-            }
-            // If no views left, consider stopping foreground
-            isRunning = !views.isEmpty();
+            closeOverlay(id);
+            return START_STICKY;
+        }
+
+        boolean isPrewarm = intent.getBooleanExtra(INTENT_EXTRA_PREWARM, false);
+        if (isPrewarm && views.containsKey(id)) {
+            // Already showing, the engine is as warm as it gets
+            return START_STICKY;
+        }
+        if (!isPrewarm && views.containsKey(id)) {
+            final boolean rendered = views.get(id).hasRenderedFirstFrame();
+            if (intent.getBooleanExtra(OverlayScheduler.EXTRA_ADMITTED, false)) {
+                // Admitted while its window appeared: booted now, or by that window's first frame listener
+                if (rendered) scheduler.onBooted(id);
+            } else {
+                scheduler.join(id, intent.getStringExtra(OverlayScheduler.EXTRA_REQUEST_ID), rendered);
+            }
+        } else if (!isPrewarm && !intent.getBooleanExtra(OverlayScheduler.EXTRA_ADMITTED, false)) {
+            // Comes back here with EXTRA_ADMITTED once there is room
+            isRunning = true;
+            scheduler.request(id, intent);
             return START_STICKY;
         }
 
@@ -275,6 +634,20 @@ public class OverlayService extends Service implements View.OnTouchListener {
             cfg = new EngineConfig();
             configs.put(engineId, cfg);
         }
+        String extraEntrypoint = intent.getStringExtra("entrypoint");
+        String extraInitialRoute = intent.getStringExtra("initialRoute");
+        ArrayList<String> extraDartArgs = intent.getStringArrayListExtra("dartArgs");
+        cfg.entrypoint = (extraEntrypoint != null && !extraEntrypoint.isEmpty()) ? extraEntrypoint : "overlayMain";
+        cfg.initialRoute = (extraInitialRoute != null && !extraInitialRoute.isEmpty()) ? extraInitialRoute : null;
+        cfg.dartArgs = (extraDartArgs != null && !extraDartArgs.isEmpty()) ? extraDartArgs : null;
+        cfg.pluginAllowlist = intent.getStringArrayListExtra("pluginAllowlist");
+
+        if (isPrewarm) {
+            isRunning = true;
+            obtainEngine(id, cfg, null);
+            Log.d("onStartCommand", "Engine prewarmed: " + id);
+            return START_STICKY;
+        }
         int widthDp  = intent.getIntExtra("widthDp",  -1);
         int heightDp = intent.getIntExtra("heightDp", -1);
         String alignment = intent.getStringExtra("alignment");
@@ -290,12 +663,23 @@ public class OverlayService extends Service implements View.OnTouchListener {
         cfg.gravity  = mapGravityFromAlignment(alignment);
         cfg.flag     = mapFlagFromString(flagStr);
         cfg.enableDrag = enableDrag;
+        cfg.autoImeFocus = intent.getBooleanExtra("autoImeFocus", true);
+        String layoutGroup = intent.getStringExtra("layoutGroup");
+        cfg.layoutGroup = (layoutGroup != null && !layoutGroup.isEmpty()) ? layoutGroup : null;
+        cfg.avoidOverlap = intent.getBooleanExtra("avoidOverlap", false);
+        cfg.layoutOrder = intent.getIntExtra("layoutOrder", 0);
+        cfg.priority = intent.getIntExtra(OverlayScheduler.EXTRA_PRIORITY, 0);
         cfg.positionGravity = (positionGravity != null) ? positionGravity : "none";
         cfg.overlayTitle = overlayTitle;
         cfg.overlayContent = overlayContent != null ? overlayContent : "";
         cfg.notificationVisibility = mapNotificationVisibility(notificationVisibility);
 
         isRunning = true;
+        Intent replay = new Intent(intent);
+        // A replay (restore, recreate) asks for admission again and has no caller waiting
+        replay.removeExtra(OverlayScheduler.EXTRA_ADMITTED);
+        replay.removeExtra(OverlayScheduler.EXTRA_REQUEST_ID);
+        showIntents.put(id, replay);
         Log.d("onStartCommand", "Service started");
 
         if (windowManager == null) {
@@ -309,96 +693,90 @@ public class OverlayService extends Service implements View.OnTouchListener {
             }
         }
 
-        // Acquire or create the FlutterEngine using provided engineId/entrypoint/route
-        FlutterEngine engine = engines.get(engineId);
-        if (engine == null) {
-            engine = FlutterEngineCache.getInstance().get(engineId);
-        }
-        if (engine == null) {
-            engine = new FlutterEngine(getApplicationContext());
-            engine.getPlatformViewsController().attach(
-                    getApplicationContext(),
-                    engine.getRenderer(),
-                    engine.getDartExecutor()
-            );
-            platformViewsReady = true;
-            GeneratedPluginRegister.registerGeneratedPlugins(engine);
-            if (initialRoute != null) {
-                engine.getNavigationChannel().setInitialRoute(initialRoute);
-            }
-            DartExecutor.DartEntrypoint dEntry = new DartExecutor.DartEntrypoint(
-                    FlutterInjector.instance().flutterLoader().findAppBundlePath(),
-                    entrypoint
-            );
-            if (dartArgs != null && !dartArgs.isEmpty()) {
-                engine.getDartExecutor().executeDartEntrypoint(dEntry, dartArgs);
-            } else {
-                engine.getDartExecutor().executeDartEntrypoint(dEntry);
-            }
-            FlutterEngineCache.getInstance().put(engineId, engine);
-            engines.put(engineId, engine);
-        } else {
-            engines.put(engineId, engine);
+        OverlayLaunchMetrics metrics = launchMetrics.get(id);
+        if (metrics == null) {
+            metrics = new OverlayLaunchMetrics();
+            launchMetrics.put(id, metrics);
         }
+        final OverlayLaunchMetrics launchHistory = metrics;
+        final OverlayLaunchMetrics.Launch launch = launchHistory.begin(intentAt);
+
+        // Acquire or create the FlutterEngine using provided engineId/entrypoint/route
+        FlutterEngine engine = obtainEngine(id, cfg, launch);
         engine.getLifecycleChannel().appIsResumed();
 
         if (views.containsKey(engineId)) {
             // Already showing this engineId; just return START_STICKY (no duplicate view)
+            launchHistory.abandon(launch);
             return START_STICKY;
         }
         FlutterSurfaceView surface = new FlutterSurfaceView(getApplicationContext(), true);
         surface.setZOrderOnTop(false);
         surface.setZOrderMediaOverlay(true);
-        FlutterView flutterView = new FlutterView(getApplicationContext(), surface);
+        OverlayFlutterView flutterView = new OverlayFlutterView(getApplicationContext(), surface);
         flutterView.attachToFlutterEngine(engine);
+        launch.viewAttachedAt = System.nanoTime();
         flutterView.setFitsSystemWindows(true);
         flutterView.setFocusable(true);
         flutterView.setFocusableInTouchMode(true);
         flutterView.setBackgroundColor(Color.TRANSPARENT);
         flutterView.setOnTouchListener(this);
+        flutterView.setImeListener(new OverlayFlutterView.ImeListener() {
+            @Override
+            public boolean onImeRequested(OverlayFlutterView view) {
+                return OverlayService.this.onImeRequested(id, view);
+            }
+
+            @Override
+            public void onImeHidden(OverlayFlutterView view) {
+                OverlayService.this.onImeHidden(id, view);
+            }
+        });
         views.put(engineId, flutterView);
+        OverlayFrameMetrics overlayFrameMetrics = new OverlayFrameMetrics();
+        overlayFrameMetrics.setInteractionListener(kind -> onInteractionChanged(id, kind));
+        frameMetrics.put(id, overlayFrameMetrics);
+        cfg.refreshRate.settle = () -> applyRefreshRate(id, false);
 
         MethodChannel flutterChannel = new MethodChannel(engine.getDartExecutor(), OverlayConstants.OVERLAY_TAG + "/" + engineId);
-        BasicMessageChannel<Object> overlayMessageChannel = new BasicMessageChannel<>(engine.getDartExecutor(), OverlayConstants.MESSENGER_TAG + "/" + engineId, JSONMessageCodec.INSTANCE);
+        // Decoded and routed on a background task queue so message bursts don't compete with drags
+        BasicMessageChannel<Object> overlayMessageChannel = new BasicMessageChannel<>(engine.getDartExecutor(), OverlayConstants.MESSENGER_TAG + "/" + engineId, JSONMessageCodec.INSTANCE,
+                backgroundQueue(engine.getDartExecutor()));
         channels.put(engineId, flutterChannel);
         messengers.put(engineId, overlayMessageChannel);
 
         flutterChannel.setMethodCallHandler((call, result) -> {
-            String method = call.method;
-
-            if ("updateFlag".equals(method)) {
-                Object raw = call.argument("flag");
-                final String flag = (raw == null) ? "flagNotFocusable" : raw.toString();
-                updateOverlayFlagFor(engineId, flutterView, result, flag);
-
-            } else if ("updateOverlayPosition".equals(method)) {
-                int x = call.<Integer>argument("x");
-                int y = call.<Integer>argument("y");
-                moveOverlayFor(engineId, flutterView, x, y, result);
-
-            } else if ("resizeOverlay".equals(method)) {
-                int width = call.argument("width");
-                int height = call.argument("height");
-                final boolean newEnableDrag = call.argument("enableDrag");
-                Integer duration = call.argument("duration");
-                Boolean anchorLeft = call.argument("anchorLeft");
-                Boolean anchorTop  = call.argument("anchorTop");
-                resizeOverlayFor(engineId, flutterView, width, height, newEnableDrag,
-                        duration == null ? 500 : duration,
-                        anchorLeft != null && anchorLeft,
-                        anchorTop  != null && anchorTop,
-                        result);
-
-            } else if ("isPlatformViewsReady".equals(method)) {
-                result.success(platformViewsReady);
-
-            } else {
-                result.notImplemented();
+            if ("frameTimings".equals(call.method)) {
+                // Reported by the overlay's isolate for every frame: not a command, not traced
+                OverlayFrameMetrics metrics = frameMetrics.get(id);
+                if (metrics != null && call.arguments instanceof long[]) metrics.recordFrames((long[]) call.arguments);
+                result.success(null);
+                return;
             }
+            commands.execute(() -> {
+                OverlayTrace.overlayCall(id, call);
+                try {
+                    onOverlayCall(id, flutterView, call, result);
+                } catch (RuntimeException e) {
+                    Log.e("OverlayService", "Overlay call " + call.method + " failed for " + id, e);
+                    result.error("OVERLAY_CALL", e.getMessage(), null);
+                }
+            });
         });
 
         overlayMessageChannel.setMessageHandler((message, reply) -> {
-            WindowSetup.messenger.send(message); // fan-out if you need
+            // fan-out if you need
+            final ByteBuffer encoded = JSONMessageCodec.INSTANCE.encodeMessage(message);
+            final int size = encoded != null ? encoded.position() : 0;
+            OverlayFlightRecorder.record(OverlayFlightRecorder.MESSAGE_RECEIVE, id, size, 0);
+            OverlayStats s = stats.get(id);
+            if (s != null) s.onMessageOut(size);
+            final OverlayRemote.Server app = remote;
+            if (app != null && app.hasApp()) {
+                app.sendMessage(encoded);
+            } else {
+                postSend(WindowSetup.binaryMessenger, OverlayConstants.MESSENGER_TAG, encoded);
+            }
         });
 
         int dx = startX == OverlayConstants.DEFAULT_XY ? 0 : startX;
@@ -412,19 +790,263 @@ public class OverlayService extends Service implements View.OnTouchListener {
                 Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
                         ? WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY
                         : WindowManager.LayoutParams.TYPE_PHONE,
-                cfg.flag
-                        | WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS
-                        | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
-                        | WindowManager.LayoutParams.FLAG_LAYOUT_INSET_DECOR
-                        | WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED,
+                windowFlags(effectiveFlag(cfg)),
                 PixelFormat.TRANSLUCENT
         );
         params.gravity = cfg.gravity;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            cfg.refreshRate.requested = cfg.refreshRate.target(false, windowManager.getDefaultDisplay());
+            params.preferredRefreshRate = cfg.refreshRate.requested;
+        }
+        final EngineStartupTrace trace = startupTraces.get(id);
+        final long addViewAt = System.nanoTime();
+        flutterView.addOnFirstFrameRenderedListener(new FlutterUiDisplayListener() {
+            @Override
+            public void onFlutterUiDisplayed() {
+                final long now = System.nanoTime();
+                if (trace != null) trace.firstFrameNanos = now - addViewAt;
+                flutterView.removeOnFirstFrameRenderedListener(this);
+                View placeholder = flutterView.findViewWithTag(SNAPSHOT_PLACEHOLDER_TAG);
+                if (placeholder != null) flutterView.removeView(placeholder);
+                if (launchHistory.complete(launch, now)) {
+                    OverlayEvents.emit("launch", id, launch.toMap());
+                }
+                if (layout != null) layout.requestLayout(id); // laid out with its real size
+                if (scheduler != null) scheduler.onBooted(id);
+            }
+
+            @Override
+            public void onFlutterUiNoLongerDisplayed() {}
+        });
+        // Last frame of the previous launch until this one renders
+        snapshots.load(id, bitmap -> {
+            if (bitmap == null || views.get(id) != flutterView || flutterView.hasRenderedFirstFrame()) return;
+            ImageView placeholder = new ImageView(getApplicationContext());
+            placeholder.setTag(SNAPSHOT_PLACEHOLDER_TAG);
+            placeholder.setScaleType(ImageView.ScaleType.FIT_XY);
+            placeholder.setImageBitmap(bitmap);
+            flutterView.addView(placeholder, new FrameLayout.LayoutParams(
+                    FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
+        });
         windowManager.addView(flutterView, params);
+        OverlayFlightRecorder.record(OverlayFlightRecorder.SHOW, id, params.width, params.height);
+        sessionStore.markDirty();
+        launch.addViewAt = System.nanoTime();
         moveOverlayFor(engineId, flutterView, dx, dy, null);
         return START_STICKY;
     }
 
+    private static int effectiveFlag(EngineConfig cfg) {
+        final int flag = cfg.imeFocused ? mapFlagFromString("focusPointer") : cfg.flag;
+        return cfg.regionsBlockTouch ? flag | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE : flag;
+    }
+
+    /// Text input of this overlay wants the keyboard: make the window focusable in one relayout
+    private boolean onImeRequested(String engineId, OverlayFlutterView view) {
+        EngineConfig cfg = configs.get(engineId);
+        if (windowManager == null || cfg == null || !cfg.autoImeFocus || cfg.imeFocused) return false;
+        if ((cfg.flag & WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE) == 0) return false; // already focusable
+        cfg.imeFocused = true;
+        applyFlags(engineId, view, cfg);
+        return true;
+    }
+
+    private void onImeHidden(String engineId, OverlayFlutterView view) {
+        EngineConfig cfg = configs.get(engineId);
+        if (windowManager == null || cfg == null || !cfg.imeFocused) return;
+        cfg.imeFocused = false;
+        applyFlags(engineId, view, cfg);
+    }
+
+    private void applyFlags(String engineId, View view, EngineConfig cfg) {
+        WindowManager.LayoutParams params = (WindowManager.LayoutParams) view.getLayoutParams();
+        params.flags = windowFlags(effectiveFlag(cfg));
+        try { updateLayout(engineId, view, params); } catch (Throwable ignored) {}
+        OverlayFlightRecorder.record(OverlayFlightRecorder.FLAG, engineId, params.flags, 0);
+    }
+
+    private static int windowFlags(int flag) {
+        return flag
+                | WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS
+                | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
+                | WindowManager.LayoutParams.FLAG_LAYOUT_INSET_DECOR
+                | WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED;
+    }
+
+    /// Main thread snapshot of the live overlays for the session store
+    private List<OverlaySessionStore.Entry> snapshotSession() {
+        List<OverlaySessionStore.Entry> entries = new ArrayList<>();
+        for (Map.Entry<String, FlutterView> e : views.entrySet()) {
+            Intent showIntent = showIntents.get(e.getKey());
+            EngineConfig cfg = configs.get(e.getKey());
+            if (showIntent == null || cfg == null) continue;
+            WindowManager.LayoutParams params = (WindowManager.LayoutParams) e.getValue().getLayoutParams();
+            OverlaySessionStore.Entry entry = new OverlaySessionStore.Entry();
+            entry.showIntent = showIntent;
+            entry.flags = cfg.flag;
+            entry.enableDrag = cfg.enableDrag;
+            entry.positionGravity = cfg.positionGravity;
+            entry.gravity = params.gravity;
+            entry.x = params.x;
+            entry.y = params.y;
+            entry.width = params.width;
+            entry.height = params.height;
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /// Shows the overlays of the last session again with their last geometry and flags.
+    /// They were on screen already, so they skip admission: a queued one would have no window to restore.
+    private void restoreSession() {
+        for (OverlaySessionStore.Entry entry : sessionStore.load()) {
+            Intent show = new Intent(entry.showIntent);
+            show.putExtra(OverlayScheduler.EXTRA_ADMITTED, true);
+            onStartCommand(show, 0, 0);
+            String id = entry.showIntent.getStringExtra("engineId");
+            FlutterView v = id != null ? views.get(id) : null;
+            EngineConfig cfg = id != null ? configs.get(id) : null;
+            if (v == null || cfg == null) continue;
+            cfg.flag = entry.flags;
+            cfg.enableDrag = entry.enableDrag;
+            cfg.positionGravity = entry.positionGravity != null ? entry.positionGravity : "none";
+            WindowManager.LayoutParams params = (WindowManager.LayoutParams) v.getLayoutParams();
+            params.flags = windowFlags(effectiveFlag(cfg));
+            params.gravity = entry.gravity;
+            params.x = entry.x;
+            params.y = entry.y;
+            params.width = entry.width;
+            params.height = entry.height;
+            try { updateLayout(id, v, params); } catch (Throwable ignored) {}
+        }
+        Log.d("OverlayService", "Session restored: " + views.keySet());
+    }
+
+    /// Removes the window of this overlay and forgets its per-engine state,
+    /// the engine itself stays in FlutterEngineCache for the next show.
+    /// With snapshot, its last frame is kept as the placeholder of the next launch.
+    private void removeOverlay(String id, boolean snapshot) {
+        if (windowManager == null || !views.containsKey(id)) return;
+        FlutterView v = views.get(id);
+        FlutterEngine engine = engines.get(id);
+        if (snapshot && engine != null && v.hasRenderedFirstFrame()) snapshots.capture(id, engine);
+        try { windowManager.removeView(v); } catch (Throwable ignored) {}
+        try { v.detachFromFlutterEngine(); } catch (Throwable ignored) {}
+        views.remove(id);
+        OverlayFlightRecorder.record(OverlayFlightRecorder.CLOSE, id);
+        sessionStore.markDirty();
+        // Remove engine/channel/messenger as well if desired
+        engines.remove(id);
+        channels.remove(id);
+        messengers.remove(id);
+        configs.remove(id); // ← remove config too
+        OverlayFrameMetrics metrics = frameMetrics.remove(id);
+        if (metrics != null) metrics.stop();
+        if (layout != null) layout.requestLayout(null); // close the gap in its group
+        if (scheduler != null) scheduler.onRemoved(id);
+    }
+
+    /// Closed on purpose: not restored nor recreated
+    private void closeOverlay(String id) {
+        if (scheduler != null) scheduler.cancel(id);
+        removeOverlay(id, true);
+        showIntents.remove(id);
+        if (watchdog != null) watchdog.forget(id);
+        // If no views left, consider stopping foreground
+        isRunning = !views.isEmpty();
+    }
+
+    /// Watchdog policy for an engine that stopped answering pings
+    private void restartOverlay(String id, String policy) {
+        FlutterView v = views.get(id);
+        FlutterEngine engine = engines.get(id);
+        if (v == null || engine == null) return;
+        Log.w("OverlayService", "Engine " + id + " unresponsive, restart policy: " + policy);
+        if (OverlayWatchdog.POLICY_REATTACH.equals(policy)) {
+            try {
+                v.detachFromFlutterEngine();
+                v.attachToFlutterEngine(engine);
+            } catch (Throwable t) {
+                Log.e("OverlayService", "Reattach failed for " + id, t);
+            }
+        } else if (OverlayWatchdog.POLICY_RECREATE.equals(policy)) {
+            Intent replay = showIntents.get(id);
+            removeOverlay(id, false); // a wedged engine may not render a snapshot
+            FlutterEngineCache.getInstance().remove(id);
+            try { engine.destroy(); } catch (Throwable ignored) {}
+            stats.remove(id);
+            OverlayFlightRecorder.record(OverlayFlightRecorder.ENGINE_DESTROY, id);
+            if (replay != null) onStartCommand(replay, 0, 0);
+        }
+    }
+
+    /// Returns the engine for this id, creating and booting it if it's neither live nor cached.
+    /// Only the plugins in cfg.pluginAllowlist are registered when it's set.
+    private FlutterEngine obtainEngine(String id, EngineConfig cfg, @Nullable OverlayLaunchMetrics.Launch launch) {
+        EngineStartupTrace trace = startupTraces.get(id);
+        if (trace == null) {
+            trace = new EngineStartupTrace();
+            startupTraces.put(id, trace);
+        }
+        FlutterEngine engine = engines.get(id);
+        if (engine == null) {
+            engine = FlutterEngineCache.getInstance().get(id);
+        }
+        if (engine != null) {
+            trace.reused = true;
+            if (!stats.containsKey(id)) stats.put(id, new OverlayStats()); // cached by someone else
+            engines.put(id, engine);
+            if (launch != null) launch.engineReadyAt = System.nanoTime();
+            return engine;
+        }
+
+        trace.reused = false;
+        trace.loaderNanos = loaderInitNanos;
+        final OverlayStats engineStats = new OverlayStats();
+        final long heapBefore = OverlayStats.heapInUse();
+        final long t0 = System.nanoTime();
+        // Plugins are registered below, don't let the engine register every generated plugin itself
+        engine = new FlutterEngine(getApplicationContext(), null, false);
+        engine.getPlatformViewsController().attach(
+                getApplicationContext(),
+                engine.getRenderer(),
+                engine.getDartExecutor()
+        );
+        platformViewsReady = true;
+        final long t1 = System.nanoTime();
+        trace.pluginCount = OverlayPluginRegistrar.register(engine, cfg.pluginAllowlist);
+        final long t2 = System.nanoTime();
+        if (cfg.initialRoute != null) {
+            engine.getNavigationChannel().setInitialRoute(cfg.initialRoute);
+        }
+        DartExecutor.DartEntrypoint dEntry = new DartExecutor.DartEntrypoint(
+                FlutterInjector.instance().flutterLoader().findAppBundlePath(),
+                cfg.entrypoint
+        );
+        if (cfg.dartArgs != null && !cfg.dartArgs.isEmpty()) {
+            engine.getDartExecutor().executeDartEntrypoint(dEntry, cfg.dartArgs);
+        } else {
+            engine.getDartExecutor().executeDartEntrypoint(dEntry);
+        }
+        final long t3 = System.nanoTime();
+        engineStats.memoryDeltaBytes = OverlayStats.heapInUse() - heapBefore;
+        stats.put(id, engineStats);
+        trace.constructNanos = t1 - t0;
+        trace.registrationNanos = t2 - t1;
+        trace.entrypointNanos = t3 - t2;
+        if (launch != null) {
+            launch.engineCreated = true;
+            launch.engineReadyAt = t2;
+            launch.entrypointAt = t3;
+        }
+        Log.d("OverlayService", "Engine " + id + " startup: " + trace.toMap());
+
+        OverlayFlightRecorder.record(OverlayFlightRecorder.ENGINE_CREATE, id);
+        FlutterEngineCache.getInstance().put(id, engine);
+        engines.put(id, engine);
+        return engine;
+    }
+
 
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR1)
     private int screenHeight() {
@@ -470,19 +1092,55 @@ public class OverlayService extends Service implements View.OnTouchListener {
         EngineConfig cfg = configs.get(engineId);
         if (windowManager != null && view != null && cfg != null) {
             cfg.flag = mapFlagFromString(flag);
+            cfg.imeFocused = false; // an explicit flag wins over the automatic IME focus
             WindowManager.LayoutParams params = (WindowManager.LayoutParams) view.getLayoutParams();
-            params.flags = cfg.flag
-                    | WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS
-                    | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
-                    | WindowManager.LayoutParams.FLAG_LAYOUT_INSET_DECOR
-                    | WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED;
-            windowManager.updateViewLayout(view, params);
+            params.flags = windowFlags(effectiveFlag(cfg));
+            updateLayout(engineId, view, params);
+            OverlayFlightRecorder.record(OverlayFlightRecorder.FLAG, engineId, params.flags, 0);
             result.success(true);
         } else {
             result.success(false);
         }
     }
 
+    /// Rects come as flat [left, top, right, bottom, ...] in dp, relative to the overlay; null clears them.
+    /// Hit-testing against them happens in onTouch, the window flags only change when the set
+    /// switches between empty (nothing touchable, FLAG_NOT_TOUCHABLE) and non-empty.
+    private void setTouchableRegionsFor(String engineId, FlutterView view, @Nullable java.util.List<Number> rects, MethodChannel.Result result) {
+        EngineConfig cfg = configs.get(engineId);
+        if (windowManager == null || view == null || cfg == null) {
+            result.success(false);
+            return;
+        }
+        ArrayList<Rect> regions = null;
+        if (rects != null) {
+            regions = new ArrayList<>(rects.size() / 4);
+            final float density = mResources.getDisplayMetrics().density;
+            for (int i = 0; i + 3 < rects.size(); i += 4) {
+                regions.add(new Rect(
+                        Math.round(rects.get(i).floatValue() * density),
+                        Math.round(rects.get(i + 1).floatValue() * density),
+                        Math.round(rects.get(i + 2).floatValue() * density),
+                        Math.round(rects.get(i + 3).floatValue() * density)));
+            }
+        }
+        cfg.touchRegions = regions;
+        final boolean blockTouch = regions != null && regions.isEmpty();
+        if (blockTouch != cfg.regionsBlockTouch) {
+            cfg.regionsBlockTouch = blockTouch;
+            applyFlags(engineId, view, cfg);
+        }
+        result.success(true);
+    }
+
+    private static boolean hitsRegion(@Nullable ArrayList<Rect> regions, float x, float y) {
+        if (regions == null) return true;
+        for (int i = 0, n = regions.size(); i < n; i++) {
+            if (regions.get(i).contains((int) x, (int) y)) return true;
+        }
+        return false;
+    }
+
     /// Keep the window inside screen, not outside
     private void clampToScreen(WindowManager.LayoutParams p) {
         // screen size you already cache
@@ -518,6 +1176,7 @@ public class OverlayService extends Service implements View.OnTouchListener {
         // Resolve targets (dp -> px)
         final int targetW = (width  == -1999 || width  == -1) ? WindowManager.LayoutParams.MATCH_PARENT : dpToPx(width);
         final int targetH = (height == -1999 || height == -1) ? WindowManager.LayoutParams.MATCH_PARENT : dpToPx(height);
+        OverlayFlightRecorder.record(OverlayFlightRecorder.RESIZE, engineId, targetW, targetH);
 
         // Capture starting geometry
         final int startW = params.width;
@@ -544,8 +1203,7 @@ public class OverlayService extends Service implements View.OnTouchListener {
 
         params.gravity = Gravity.TOP | Gravity.LEFT;
         try {
-            params.preferredRefreshRate = 90f;
-            windowManager.updateViewLayout(view, params);
+            updateLayout(engineId, view, params);
         } catch (Throwable ignored) {}
 
         final int baseX = startX;
@@ -587,19 +1245,146 @@ public class OverlayService extends Service implements View.OnTouchListener {
             }
 
             clampToScreen(params);         // you already have this
-            try { windowManager.updateViewLayout(view, params); } catch (Throwable ignored) {}
+            try { updateLayout(engineId, view, params); } catch (Throwable ignored) {}
+        });
+        final OverlayFrameMetrics metrics = frameMetrics.get(engineId);
+        animator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationStart(Animator animation) {
+                if (metrics != null) metrics.beginInteraction(OverlayFrameMetrics.RESIZE);
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                if (metrics != null) metrics.endInteraction(OverlayFrameMetrics.RESIZE);
+                if (layout != null) layout.requestLayout(engineId);
+            }
         });
 
         view.post(animator::start);
         if (result != null) result.success(true);
     }
 
+    /// Fast mode as soon as an interaction starts, back to the idle rate once settled
+    private void onInteractionChanged(String id, int kind) {
+        EngineConfig cfg = configs.get(id);
+        if (cfg == null) return;
+        mAnimationHandler.removeCallbacks(cfg.refreshRate.settle);
+        if (kind != OverlayFrameMetrics.IDLE) {
+            applyRefreshRate(id, true);
+        } else {
+            mAnimationHandler.postDelayed(cfg.refreshRate.settle, OverlayRefreshRate.SETTLE_MS);
+        }
+    }
+
+    private void applyRefreshRate(String id, boolean active) {
+        // preferredRefreshRate is API 21
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return;
+        EngineConfig cfg = configs.get(id);
+        FlutterView v = views.get(id);
+        if (cfg == null || v == null || windowManager == null) return;
+        final float target = cfg.refreshRate.target(active, windowManager.getDefaultDisplay());
+        if (target == cfg.refreshRate.requested) return;
+        WindowManager.LayoutParams params = (WindowManager.LayoutParams) v.getLayoutParams();
+        params.preferredRefreshRate = target;
+        cfg.refreshRate.requested = target;
+        cfg.refreshRate.changes++;
+        try { updateLayout(id, v, params); } catch (Throwable ignored) {}
+    }
+
+    /// Where a replayed trace's inputs go: the same entry points as the recorded ones
+    private OverlayTraceReplay.Target traceTarget() {
+        return new OverlayTraceReplay.Target() {
+            @Override
+            public void touch(String engineId, MotionEvent event) {
+                // Through the view, so the touch listener and then Flutter get it as they would
+                FlutterView v = views.get(engineId);
+                if (v != null) v.dispatchTouchEvent(event);
+            }
+
+            @Override
+            public void overlayCall(String engineId, MethodCall call, MethodChannel.Result result) {
+                FlutterView v = views.get(engineId);
+                if (v != null) {
+                    onOverlayCall(engineId, v, call, result);
+                } else {
+                    result.error("NO_OVERLAY", "No overlay " + engineId, null);
+                }
+            }
+
+            @RequiresApi(api = Build.VERSION_CODES.N)
+            @Override
+            public void appCall(MethodCall call, MethodChannel.Result result) {
+                new FlutterOverlayWindowPlugin(OverlayService.this).onMethodCall(call, result);
+            }
+
+            @Override
+            public void message(ByteBuffer encoded, int size) {
+                sendEncodedToAll(encoded, size);
+            }
+        };
+    }
+
+    /// Calls of an overlay's own channel, on the main thread
+    private void onOverlayCall(String id, FlutterView flutterView, MethodCall call, MethodChannel.Result result) {
+        String method = call.method;
+
+        if ("updateFlag".equals(method)) {
+            Object raw = call.argument("flag");
+            final String flag = (raw == null) ? "flagNotFocusable" : raw.toString();
+            updateOverlayFlagFor(id, flutterView, result, flag);
+
+        } else if ("updateOverlayPosition".equals(method)) {
+            int x = call.<Integer>argument("x");
+            int y = call.<Integer>argument("y");
+            moveOverlayFor(id, flutterView, x, y, result);
+
+        } else if ("resizeOverlay".equals(method)) {
+            int width = call.argument("width");
+            int height = call.argument("height");
+            final boolean newEnableDrag = call.argument("enableDrag");
+            Integer duration = call.argument("duration");
+            Boolean anchorLeft = call.argument("anchorLeft");
+            Boolean anchorTop  = call.argument("anchorTop");
+            resizeOverlayFor(id, flutterView, width, height, newEnableDrag,
+                    duration == null ? 500 : duration,
+                    anchorLeft != null && anchorLeft,
+                    anchorTop  != null && anchorTop,
+                    result);
+
+        } else if ("setTouchableRegions".equals(method)) {
+            java.util.List<Number> rects = call.argument("rects");
+            setTouchableRegionsFor(id, flutterView, rects, result);
+
+        } else if ("isPlatformViewsReady".equals(method)) {
+            result.success(platformViewsReady);
+
+        } else {
+            result.notImplemented();
+        }
+    }
+
+    /// Every relayout goes through here so it's counted and timed per overlay
+    private void updateLayout(String engineId, View view, WindowManager.LayoutParams params) {
+        final long t0 = System.nanoTime();
+        windowManager.updateViewLayout(view, params);
+        final long nanos = System.nanoTime() - t0;
+        OverlayFrameMetrics metrics = frameMetrics.get(engineId);
+        if (metrics != null) metrics.recordLayout(nanos);
+        OverlayTrace.layout(engineId, params, nanos);
+        OverlayStats s = stats.get(engineId);
+        if (s != null) s.layoutCount.incrementAndGet();
+        sessionStore.markDirty();
+    }
+
     private void moveOverlayFor(String engineId, FlutterView view, int x, int y, MethodChannel.Result result) {
         if (windowManager != null && view != null) {
             WindowManager.LayoutParams params = (WindowManager.LayoutParams) view.getLayoutParams();
             params.x = (x == -1999 || x == -1) ? -1 : dpToPx(x);
             params.y = dpToPx(y);
-            windowManager.updateViewLayout(view, params);
+            updateLayout(engineId, view, params);
+            OverlayFlightRecorder.record(OverlayFlightRecorder.MOVE, engineId, params.x, params.y);
+            if (layout != null) layout.requestLayout(engineId);
             if (result != null) result.success(true);
         } else {
             if (result != null) result.success(false);
@@ -609,56 +1394,71 @@ public class OverlayService extends Service implements View.OnTouchListener {
     // Add a helper in OverlayService.java
     private void cancelSnapTimerIfAny() {
         try {
-            if (mTrayTimerTask != null) mTrayTimerTask.cancel();
+            if (mTrayTimerTask != null) mTrayTimerTask.finish(false);
             if (mTrayAnimationTimer != null) mTrayAnimationTimer.cancel();
         } catch (Throwable ignored) {}
     }
     public static boolean moveOverlayAbsolute(String engineId, int x, int y) {
-        if (instance != null && instance.views.containsKey(engineId)) {
-            FlutterView v = instance.views.get(engineId);
-            if (instance.windowManager != null) {
-                // stop any snap animation
-                instance.cancelSnapTimerIfAny();
-                EngineConfig cfg = instance.configs.get(engineId);
-                if (cfg != null) cfg.positionGravity = "none";
-
-                WindowManager.LayoutParams params = (WindowManager.LayoutParams) v.getLayoutParams();
-                // normalize to absolute top-left
-                params.gravity = Gravity.TOP | Gravity.LEFT;
-                params.x = (x == -1999 || x == -1) ? -1 : instance.dpToPx(x);
-                params.y = instance.dpToPx(y);
-                instance.clampToScreen(params);
-                try { instance.windowManager.updateViewLayout(v, params); } catch (Throwable ignored) {}
-                return true;
-            }
-        }
-        return false;
+        return OverlayCommandExecutor.await(moveOverlayAbsoluteAsync(engineId, x, y), false);
+    }
+
+    /// Callable from any thread; a move of the same overlay still queued is replaced by this one
+    public static Future<Boolean> moveOverlayAbsoluteAsync(String engineId, int x, int y) {
+        return commands.submit("move:" + engineId, () -> {
+            final OverlayService service = instance;
+            if (service == null || service.windowManager == null) return false;
+            FlutterView v = service.views.get(engineId);
+            if (v == null) return false;
+            // stop any snap animation
+            service.cancelSnapTimerIfAny();
+            EngineConfig cfg = service.configs.get(engineId);
+            if (cfg != null) cfg.positionGravity = "none";
+
+            WindowManager.LayoutParams params = (WindowManager.LayoutParams) v.getLayoutParams();
+            // normalize to absolute top-left
+            params.gravity = Gravity.TOP | Gravity.LEFT;
+            params.x = (x == -1999 || x == -1) ? -1 : service.dpToPx(x);
+            params.y = service.dpToPx(y);
+            service.clampToScreen(params);
+            try { service.updateLayout(engineId, v, params); } catch (Throwable ignored) {}
+            OverlayFlightRecorder.record(OverlayFlightRecorder.MOVE, engineId, params.x, params.y);
+            if (service.layout != null) service.layout.requestLayout(engineId);
+            return true;
+        });
     }
 
     public static Map<String, Double> getCurrentPosition(String engineId) {
-        if (instance != null && instance.views.containsKey(engineId)) {
-            FlutterView v = instance.views.get(engineId);
+        return OverlayCommandExecutor.await(commands.submit(() -> {
+            final OverlayService service = instance;
+            FlutterView v = service != null ? service.views.get(engineId) : null;
+            if (v == null) return null;
             WindowManager.LayoutParams params = (WindowManager.LayoutParams) v.getLayoutParams();
             Map<String, Double> position = new HashMap<>();
-            position.put("x", instance.pxToDp(params.x));
-            position.put("y", instance.pxToDp(params.y));
+            position.put("x", service.pxToDp(params.x));
+            position.put("y", service.pxToDp(params.y));
             return position;
-        }
-        return null;
+        }), null);
     }
 
     public static boolean moveOverlay(String engineId, int x, int y) {
-        if (instance != null && instance.views.containsKey(engineId)) {
-            FlutterView v = instance.views.get(engineId);
-            if (instance.windowManager != null) {
-                WindowManager.LayoutParams params = (WindowManager.LayoutParams) v.getLayoutParams();
-                params.x = (x == -1999 || x == -1) ? -1 : instance.dpToPx(x);
-                params.y = instance.dpToPx(y);
-                instance.windowManager.updateViewLayout(v, params);
-                return true;
-            }
-        }
-        return false;
+        return OverlayCommandExecutor.await(moveOverlayAsync(engineId, x, y), false);
+    }
+
+    /// Callable from any thread; a move of the same overlay still queued is replaced by this one
+    public static Future<Boolean> moveOverlayAsync(String engineId, int x, int y) {
+        return commands.submit("move:" + engineId, () -> {
+            final OverlayService service = instance;
+            if (service == null || service.windowManager == null) return false;
+            FlutterView v = service.views.get(engineId);
+            if (v == null) return false;
+            WindowManager.LayoutParams params = (WindowManager.LayoutParams) v.getLayoutParams();
+            params.x = (x == -1999 || x == -1) ? -1 : service.dpToPx(x);
+            params.y = service.dpToPx(y);
+            service.updateLayout(engineId, v, params);
+            OverlayFlightRecorder.record(OverlayFlightRecorder.MOVE, engineId, params.x, params.y);
+            if (service.layout != null) service.layout.requestLayout(engineId);
+            return true;
+        });
     }
 
 
@@ -667,8 +1467,10 @@ public class OverlayService extends Service implements View.OnTouchListener {
         // Ensure Flutter loader
         FlutterInjector injector = FlutterInjector.instance();
         if (!injector.flutterLoader().initialized()) {
+            final long t0 = System.nanoTime();
             injector.flutterLoader().startInitialization(getApplicationContext());
             injector.flutterLoader().ensureInitializationComplete(getApplicationContext(), null);
+            loaderInitNanos = System.nanoTime() - t0;
         }
 
         createNotificationChannel();
@@ -691,6 +1493,103 @@ public class OverlayService extends Service implements View.OnTouchListener {
                 .build();
         startForeground(OverlayConstants.NOTIFICATION_ID, notification);
         instance = this;
+        watchdog = new OverlayWatchdog(channels, this::restartOverlay);
+        watchdog.start();
+        sessionStore = new OverlaySessionStore(new File(getFilesDir(), "flutter_overlay_session"), this::snapshotSession);
+        snapshots = new OverlaySnapshotCache(new File(getCacheDir(), "flutter_overlay_snapshots"));
+        layout = new OverlayLayoutManager(new OverlayLayoutManager.Host() {
+            @Override
+            public Map<String, FlutterView> views() {
+                return views;
+            }
+
+            @Override
+            public EngineConfig config(String engineId) {
+                return configs.get(engineId);
+            }
+
+            @Override
+            public boolean isBusy(String engineId) {
+                OverlayFrameMetrics m = frameMetrics.get(engineId);
+                return m != null && m.interaction() != OverlayFrameMetrics.IDLE;
+            }
+
+            @Override
+            public int screenWidth() {
+                return szWindow.x;
+            }
+
+            @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR1)
+            @Override
+            public int screenHeight() {
+                return OverlayService.this.screenHeight();
+            }
+
+            @Override
+            public void apply(String engineId, View view, WindowManager.LayoutParams params) {
+                try { updateLayout(engineId, view, params); } catch (Throwable ignored) {}
+            }
+        });
+        scheduler = new OverlayScheduler(new OverlayScheduler.Host() {
+            @Override
+            public List<String> live() {
+                return new ArrayList<>(views.keySet());
+            }
+
+            @Override
+            public int priority(String engineId) {
+                EngineConfig cfg = configs.get(engineId);
+                return cfg != null ? cfg.priority : 0;
+            }
+
+            @Override
+            public boolean isIdle(String engineId) {
+                OverlayFrameMetrics m = frameMetrics.get(engineId);
+                return m == null || m.interaction() == OverlayFrameMetrics.IDLE;
+            }
+
+            @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR1)
+            @Override
+            public void start(Intent intent) {
+                handleStartCommand(intent);
+            }
+
+            @Override
+            public void preempt(String engineId) {
+                closeOverlay(engineId);
+            }
+        });
+        hud = new OverlayHud(this, new OverlayHud.Source() {
+            @Override
+            public Map<String, OverlayStats> stats() {
+                return stats;
+            }
+
+            @Override
+            public Map<String, OverlayFrameMetrics> frameMetrics() {
+                return frameMetrics;
+            }
+
+            @Override
+            public int overlayCount() {
+                return views.size();
+            }
+
+            @Override
+            public int engineCount() {
+                return engines.size();
+            }
+        });
+        if (OverlayHud.enabled) hud.apply();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        if (windowManager == null) return;
+        // Rotation: docked groups and clamped overlays follow the new screen bounds
+        windowManager.getDefaultDisplay().getSize(szWindow);
+        if (layout != null) layout.requestLayout(null);
     }
 
     private void createNotificationChannel() {
@@ -737,8 +1636,23 @@ public class OverlayService extends Service implements View.OnTouchListener {
             if (e.getValue() == touched) { currentId = e.getKey(); break; }
         }
         if (currentId == null) return false;
+        OverlayTrace.touch(currentId, event);
 
         EngineConfig cfg = configs.get(currentId);
+        OverlayFrameMetrics metrics = frameMetrics.get(currentId);
+        OverlayStats engineStats = stats.get(currentId);
+        if (engineStats != null) engineStats.lastInteractionAt = SystemClock.uptimeMillis();
+        if (cfg != null && cfg.touchRegions != null) {
+            // Gestures starting outside the published regions never reach Flutter nor drag the window
+            final int action = event.getActionMasked();
+            if (action == MotionEvent.ACTION_DOWN) {
+                cfg.rejectingGesture = !hitsRegion(cfg.touchRegions, event.getX(), event.getY());
+            }
+            if (cfg.rejectingGesture) {
+                if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) cfg.rejectingGesture = false;
+                return true;
+            }
+        }
         if (windowManager != null && cfg != null && cfg.enableDrag) {
             final WindowManager.LayoutParams p =
                     (WindowManager.LayoutParams) touched.getLayoutParams();
@@ -778,11 +1692,13 @@ public class OverlayService extends Service implements View.OnTouchListener {
                     }
 
                     p.gravity = Gravity.TOP | Gravity.LEFT;
-                    windowManager.updateViewLayout(touched, p);
+                    updateLayout(currentId, touched, p);
 
                     lastX = event.getRawX();
                     lastY = event.getRawY();
                     dragging = false;
+                    if (cfg.snapTargets != null) cfg.snapTargets.captured = null;
+                    OverlayFlightRecorder.record(OverlayFlightRecorder.TOUCH, currentId, MotionEvent.ACTION_DOWN, 0);
                     break;
                 }
 
@@ -791,6 +1707,10 @@ public class OverlayService extends Service implements View.OnTouchListener {
                     float dy = event.getRawY() - lastY;
 
                     if (!dragging && dx * dx + dy * dy < 25) return false;
+                    if (!dragging) {
+                        if (metrics != null) metrics.beginInteraction(OverlayFrameMetrics.DRAG);
+                        OverlayFlightRecorder.record(OverlayFlightRecorder.TOUCH, currentId, MotionEvent.ACTION_MOVE, 1);
+                    }
                     dragging = true;
 
                     lastX = event.getRawX();
@@ -798,18 +1718,33 @@ public class OverlayService extends Service implements View.OnTouchListener {
 
                     p.x += Math.round(dx);
                     p.y += Math.round(dy);
-                    windowManager.updateViewLayout(touched, p);
+                    updateLayout(currentId, touched, p);
+                    if (cfg.snapTargets != null) trackSnapTarget(currentId, cfg.snapTargets, touched, p);
                     break;
                 }
 
                 case MotionEvent.ACTION_UP:
                 case MotionEvent.ACTION_CANCEL: {
                     lastYPosition = p.y;
-                    if (!"none".equals(cfg.positionGravity)) {
-                        windowManager.updateViewLayout(touched, p);
-                        mTrayTimerTask = new TrayAnimationTimerTask(touched, cfg);
-                        mTrayAnimationTimer = new Timer();
+                    if (metrics != null) metrics.endInteraction(OverlayFrameMetrics.DRAG);
+                    OverlayFlightRecorder.record(OverlayFlightRecorder.TOUCH, currentId, event.getAction(), dragging ? 1 : 0);
+                    final OverlaySnapTargets.Target target = cfg.snapTargets != null ? cfg.snapTargets.captured : null;
+                    if (target != null) {
+                        cfg.snapTargets.captured = null;
+                        final Point dest = cfg.snapTargets.destination(target, p.x, p.y, touched.getWidth(), touched.getHeight());
+                        OverlayEvents.emit("snapTargetCaptured", currentId, target.toMap());
+                        mTrayTimerTask = new TrayAnimationTimerTask(currentId, touched, cfg, dest.x, dest.y, target.dismiss);
+                        OverlayFlightRecorder.record(OverlayFlightRecorder.SNAP_START, currentId, dest.x, dest.y);
+                        mTrayAnimationTimer = animationTimers.create();
+                        mTrayAnimationTimer.schedule(mTrayTimerTask, 0, 25);
+                    } else if (!"none".equals(cfg.positionGravity)) {
+                        updateLayout(currentId, touched, p);
+                        mTrayTimerTask = new TrayAnimationTimerTask(currentId, touched, cfg);
+                        OverlayFlightRecorder.record(OverlayFlightRecorder.SNAP_START, currentId, mTrayTimerTask.mDestX, mTrayTimerTask.mDestY);
+                        mTrayAnimationTimer = animationTimers.create();
                         mTrayAnimationTimer.schedule(mTrayTimerTask, 0, 25);
+                    } else if (dragging && layout != null) {
+                        layout.requestLayout(currentId);
                     }
                     return false;
                 }
@@ -819,17 +1754,42 @@ public class OverlayService extends Service implements View.OnTouchListener {
         return false;
     }
 
+    /// Emits enter/leave as the dragged overlay's center crosses snap targets
+    private void trackSnapTarget(String engineId, OverlaySnapTargets targets, View view, WindowManager.LayoutParams p) {
+        final int vw = view.getWidth();
+        final int vh = view.getHeight();
+        final OverlaySnapTargets.Target hit = targets.query(p.x + vw / 2, p.y + vh / 2, szWindow.x, screenHeight());
+        if (hit == targets.captured) return;
+        if (targets.captured != null) OverlayEvents.emit("snapTargetLeave", engineId, targets.captured.toMap());
+        if (hit != null) OverlayEvents.emit("snapTargetEnter", engineId, hit.toMap());
+        targets.captured = hit;
+    }
+
     private class TrayAnimationTimerTask extends TimerTask {
         int mDestX;
         int mDestY;
         WindowManager.LayoutParams params;
         FlutterView trayView;
         EngineConfig cfg;
+        String engineId;
+        OverlayFrameMetrics metrics;
+        boolean dismissOnArrival;
+
+        /// Animates to a captured snap target, clamped inside the screen
+        TrayAnimationTimerTask(String engineId, FlutterView trayView, EngineConfig cfg, int destX, int destY, boolean dismiss) {
+            this(engineId, trayView, cfg);
+            mDestX = Math.max(0, Math.min(destX, szWindow.x - trayView.getWidth()));
+            mDestY = Math.max(0, Math.min(destY, screenHeight() - trayView.getHeight()));
+            dismissOnArrival = dismiss;
+        }
 
-        public TrayAnimationTimerTask(FlutterView trayView, EngineConfig cfg) {
+        public TrayAnimationTimerTask(String engineId, FlutterView trayView, EngineConfig cfg) {
             super();
+            this.engineId = engineId;
             this.trayView = trayView;
             this.cfg = cfg;
+            this.metrics = frameMetrics.get(engineId);
+            if (metrics != null) metrics.beginInteraction(OverlayFrameMetrics.SNAP);
             this.params = (WindowManager.LayoutParams) trayView.getLayoutParams();
             mDestY = lastYPosition;
             switch (cfg.positionGravity) {
@@ -852,17 +1812,32 @@ public class OverlayService extends Service implements View.OnTouchListener {
         @Override
         public void run() {
             mAnimationHandler.post(() -> {
+                // Posted before a dismiss or close removed the window
+                if (views.get(engineId) != trayView) return;
                 params.x = (2 * (params.x - mDestX)) / 3 + mDestX;
                 params.y = (2 * (params.y - mDestY)) / 3 + mDestY;
                 if (windowManager != null) {
-                    windowManager.updateViewLayout(trayView, params);
+                    updateLayout(engineId, trayView, params);
                 }
                 if (Math.abs(params.x - mDestX) < 2 && Math.abs(params.y - mDestY) < 2) {
-                    TrayAnimationTimerTask.this.cancel();
                     mTrayAnimationTimer.cancel();
+                    finish(true);
                 }
             });
         }
+
+        /// @param arrived false when interrupted, e.g. by moveOverlayAbsolute
+        void finish(boolean arrived) {
+            if (!cancel()) return; // already finished
+            OverlayFlightRecorder.record(OverlayFlightRecorder.SNAP_END, engineId, params.x, params.y);
+            if (metrics != null) metrics.endInteraction(OverlayFrameMetrics.SNAP);
+            if (arrived && dismissOnArrival) {
+                OverlayEvents.emit("dismiss", engineId, new HashMap<>());
+                closeOverlay(engineId);
+                return;
+            }
+            if (layout != null) layout.requestLayout(engineId);
+        }
     }
 
 
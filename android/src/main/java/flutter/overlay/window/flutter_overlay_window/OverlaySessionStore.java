@@ -0,0 +1,192 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.util.AtomicFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-disk copy of the live overlays (show arguments + last geometry and flags) so a sticky
+ * restart of OverlayService can bring them back where they were.
+ * Changes only mark the store dirty; a snapshot is taken on the main thread once per
+ * {@link #DEBOUNCE_MS} and written on a background thread, so drags never touch the disk.
+ */
+final class OverlaySessionStore {
+    private static final String TAG = "OverlaySessionStore";
+    private static final int VERSION = 4;
+    static final long DEBOUNCE_MS = 1000;
+
+    // Show extras persisted as-is, they're replayed through onStartCommand
+    private static final String[] STRING_EXTRAS = {
+            "engineId", "entrypoint", "initialRoute", "alignment", "flagStr", "positionGravity",
+            "overlayTitle", "overlayContent", "notificationVisibility", "layoutGroup"
+    };
+    private static final String[] INT_EXTRAS = {"widthDp", "heightDp", "startX", "startY", "layoutOrder",
+            OverlayScheduler.EXTRA_PRIORITY};
+    private static final String[] LIST_EXTRAS = {"dartArgs", "pluginAllowlist"};
+    private static final String[] BOOLEAN_EXTRAS = {"enableDrag", "autoImeFocus", "avoidOverlap"};
+
+    static final class Entry {
+        Intent showIntent;
+        int flags;
+        boolean enableDrag;
+        String positionGravity;
+        int gravity;
+        int x;
+        int y;
+        int width;
+        int height;
+    }
+
+    interface Snapshotter {
+        /// Called on the main thread, returns the overlays to persist
+        List<Entry> snapshot();
+    }
+
+    private final AtomicFile file;
+    private final Snapshotter snapshotter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread ioThread = new HandlerThread("OverlaySession");
+    private final Handler ioHandler;
+    private boolean scheduled;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            scheduled = false;
+            final List<Entry> entries = snapshotter.snapshot();
+            ioHandler.post(() -> write(entries));
+        }
+    };
+
+    OverlaySessionStore(@NonNull File file, @NonNull Snapshotter snapshotter) {
+        this.file = new AtomicFile(file);
+        this.snapshotter = snapshotter;
+        ioThread.start();
+        ioHandler = new Handler(ioThread.getLooper());
+    }
+
+    /// Cheap enough for hot paths: at most one pending flush.
+    void markDirty() {
+        if (scheduled) return;
+        scheduled = true;
+        mainHandler.postDelayed(flush, DEBOUNCE_MS);
+    }
+
+    /// Forgets the session, e.g. when every overlay was closed on purpose.
+    void clear() {
+        mainHandler.removeCallbacks(flush);
+        scheduled = false;
+        ioHandler.post(file::delete);
+    }
+
+    void close() {
+        mainHandler.removeCallbacks(flush);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            ioThread.quitSafely(); // let a pending write or clear finish
+        } else {
+            ioThread.quit();
+        }
+    }
+
+    private void write(List<Entry> entries) {
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry e : entries) {
+                for (String key : STRING_EXTRAS) writeNullable(out, e.showIntent.getStringExtra(key));
+                for (String key : INT_EXTRAS) out.writeInt(e.showIntent.getIntExtra(key, -1));
+                for (String key : BOOLEAN_EXTRAS) out.writeBoolean(e.showIntent.getBooleanExtra(key, false));
+                for (String key : LIST_EXTRAS) {
+                    ArrayList<String> list = e.showIntent.getStringArrayListExtra(key);
+                    out.writeInt(list == null ? -1 : list.size());
+                    if (list != null) for (String v : list) writeNullable(out, v);
+                }
+                out.writeInt(e.flags);
+                out.writeBoolean(e.enableDrag);
+                writeNullable(out, e.positionGravity);
+                out.writeInt(e.gravity);
+                out.writeInt(e.x);
+                out.writeInt(e.y);
+                out.writeInt(e.width);
+                out.writeInt(e.height);
+            }
+            out.flush();
+            file.finishWrite(fos);
+        } catch (IOException ex) {
+            Log.e(TAG, "Failed to persist overlay session", ex);
+            if (fos != null) file.failWrite(fos);
+        }
+    }
+
+    /// Reads the last session, empty when there's none or it can't be read.
+    @NonNull
+    List<Entry> load() {
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(file.openRead()))) {
+            if (in.readInt() != VERSION) return entries;
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry e = new Entry();
+                e.showIntent = new Intent();
+                for (String key : STRING_EXTRAS) {
+                    String v = readNullable(in);
+                    if (v != null) e.showIntent.putExtra(key, v);
+                }
+                for (String key : INT_EXTRAS) e.showIntent.putExtra(key, in.readInt());
+                for (String key : BOOLEAN_EXTRAS) e.showIntent.putExtra(key, in.readBoolean());
+                for (String key : LIST_EXTRAS) {
+                    final int size = in.readInt();
+                    if (size < 0) continue;
+                    ArrayList<String> list = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) list.add(readNullable(in));
+                    e.showIntent.putStringArrayListExtra(key, list);
+                }
+                e.flags = in.readInt();
+                e.enableDrag = in.readBoolean();
+                e.positionGravity = readNullable(in);
+                e.gravity = in.readInt();
+                e.x = in.readInt();
+                e.y = in.readInt();
+                e.width = in.readInt();
+                e.height = in.readInt();
+                entries.add(e);
+            }
+        } catch (java.io.FileNotFoundException ignored) {
+            // no session yet
+        } catch (IOException ex) {
+            Log.e(TAG, "Failed to read overlay session", ex);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static void writeNullable(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    @Nullable
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
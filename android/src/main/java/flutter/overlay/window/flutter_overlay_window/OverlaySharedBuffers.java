@@ -0,0 +1,208 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Build;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Named byte buffers shared by the main app and the overlay engines, for payloads too large
+ * to JSON-encode on every send (images, waveforms, long lists).
+ * Each buffer is one native region, anonymous shared memory on API 27+ and a direct ByteBuffer
+ * before, laid out as [version: int64 LE][payload]. Engines write and read it as raw bytes on
+ * {@link OverlayConstants#BUFFERS_TAG}: no codec, a write is one copy from the message into the
+ * region and a read is answered with the region itself, which the engine copies once into Dart.
+ * Only the name, version and length travel on the event channel (a "sharedBuffer" event).
+ *
+ * Request: [op: u8][name length: u16 LE][name UTF-8][payload], op {@link #WRITE} or {@link #READ}.
+ * Reply: [version: int64 LE] for a write, [version][payload] for a read, empty for an unknown
+ * buffer or a payload larger than its capacity.
+ */
+final class OverlaySharedBuffers {
+    private static final String TAG = "OverlaySharedBuffers";
+
+    static final int WRITE = 1;
+    static final int READ = 2;
+    private static final int HEADER = 8;
+
+    private static final class Buffer {
+        final ByteBuffer region;            // direct, HEADER + capacity bytes
+        @Nullable
+        final Object sharedMemory;          // SharedMemory on API 27+
+        int length;
+        long version;
+        long reads;
+        long writes;
+
+        Buffer(ByteBuffer region, @Nullable Object sharedMemory) {
+            this.region = region.order(ByteOrder.LITTLE_ENDIAN);
+            this.sharedMemory = sharedMemory;
+        }
+
+        int capacity() {
+            return region.capacity() - HEADER;
+        }
+    }
+
+    private static final Map<String, Buffer> buffers = new HashMap<>();
+
+    private OverlaySharedBuffers() {}
+
+    /// Creates the buffer, or keeps the existing one when it is already large enough. false if it can't be mapped
+    static boolean allocate(@NonNull String name, int capacity) {
+        synchronized (buffers) {
+            Buffer existing = buffers.get(name);
+            if (existing != null && existing.capacity() >= capacity) return true;
+            Buffer b = map(name, capacity);
+            if (b == null) return false;
+            if (existing != null) {
+                // Grown: the old contents stay readable under the same version
+                ByteBuffer from = existing.region.duplicate();
+                from.position(HEADER).limit(HEADER + existing.length);
+                b.region.position(HEADER);
+                b.region.put(from);
+                b.length = existing.length;
+                b.version = existing.version;
+                b.region.putLong(0, b.version);
+                unmap(existing);
+            }
+            buffers.put(name, b);
+            return true;
+        }
+    }
+
+    @Nullable
+    private static Buffer map(String name, int capacity) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            try {
+                SharedMemory shm = SharedMemory.create("overlay:" + name, HEADER + capacity);
+                return new Buffer(shm.mapReadWrite(), shm);
+            } catch (ErrnoException e) {
+                Log.w(TAG, "SharedMemory unavailable for " + name + ", using a direct buffer", e);
+            }
+        }
+        try {
+            return new Buffer(ByteBuffer.allocateDirect(HEADER + capacity), null);
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Can't allocate " + capacity + " bytes for " + name, e);
+            return null;
+        }
+    }
+
+    private static void unmap(Buffer b) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1 && b.sharedMemory != null) {
+            SharedMemory.unmap(b.region);
+            ((SharedMemory) b.sharedMemory).close();
+        }
+    }
+
+    static boolean release(@NonNull String name) {
+        synchronized (buffers) {
+            Buffer b = buffers.remove(name);
+            if (b == null) return false;
+            unmap(b);
+            return true;
+        }
+    }
+
+    static Map<String, Object> stats() {
+        Map<String, Object> map = new HashMap<>();
+        synchronized (buffers) {
+            for (Map.Entry<String, Buffer> e : buffers.entrySet()) {
+                Buffer b = e.getValue();
+                Map<String, Object> m = new HashMap<>();
+                m.put("capacity", b.capacity());
+                m.put("length", b.length);
+                m.put("version", b.version);
+                m.put("reads", b.reads);
+                m.put("writes", b.writes);
+                m.put("shared", b.sharedMemory != null);
+                map.put(e.getKey(), m);
+            }
+        }
+        return map;
+    }
+
+    /// Serves the raw buffer protocol on one engine's messenger, off the main thread when possible.
+    static void attach(@NonNull BinaryMessenger messenger) {
+        messenger.setMessageHandler(OverlayConstants.BUFFERS_TAG, OverlaySharedBuffers::onMessage,
+                OverlayService.backgroundQueue(messenger));
+    }
+
+    static void detach(@NonNull BinaryMessenger messenger) {
+        messenger.setMessageHandler(OverlayConstants.BUFFERS_TAG, null);
+    }
+
+    private static void onMessage(@Nullable ByteBuffer message, @NonNull BinaryMessenger.BinaryReply reply) {
+        if (message == null || message.remaining() < 3) {
+            reply.reply(null);
+            return;
+        }
+        message.order(ByteOrder.LITTLE_ENDIAN);
+        final int op = message.get() & 0xFF;
+        final int nameLength = message.getShort() & 0xFFFF;
+        if (message.remaining() < nameLength) {
+            reply.reply(null);
+            return;
+        }
+        byte[] nameBytes = new byte[nameLength];
+        message.get(nameBytes);
+        final String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+        // One lock for all buffers: a buffer can't be grown or released under a reader or writer
+        if (op == WRITE) {
+            final int length = message.remaining();
+            final long version;
+            synchronized (buffers) {
+                final Buffer b = buffers.get(name);
+                if (b == null || length > b.capacity()) {
+                    reply.reply(null);
+                    return;
+                }
+                ByteBuffer dst = b.region.duplicate();
+                dst.position(HEADER);
+                dst.put(message);
+                b.length = length;
+                b.version++;
+                b.writes++;
+                b.region.putLong(0, b.version);
+                version = b.version;
+            }
+            ByteBuffer out = ByteBuffer.allocateDirect(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            out.putLong(version);
+            reply.reply(out);
+            Map<String, Object> event = new HashMap<>();
+            event.put("name", name);
+            event.put("version", version);
+            event.put("length", length);
+            OverlayEvents.emit("sharedBuffer", null, event);
+        } else if (op == READ) {
+            synchronized (buffers) {
+                final Buffer b = buffers.get(name);
+                if (b == null) {
+                    reply.reply(null);
+                    return;
+                }
+                b.reads++;
+                // The reply is copied into Dart before reply() returns, so the region can be
+                // handed out as is while the lock keeps writers out. Its position is the length.
+                ByteBuffer view = b.region.duplicate();
+                view.position(HEADER + b.length);
+                reply.reply(view);
+            }
+        } else {
+            reply.reply(null);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.util.SparseArray;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Magnetic snap targets of one overlay (points, screen edges and rectangles), in screen px.
+ * A target captures the overlay when the overlay's center is within its radius; the highest
+ * priority wins, then the nearest. Targets are bucketed in a uniform grid so a drag move only
+ * looks at the few targets around the finger. Main thread only.
+ */
+final class OverlaySnapTargets {
+    static final int POINT = 0;
+    static final int EDGE = 1;
+    static final int RECT = 2;
+
+    private static final int CELL_PX = 128;
+
+    static final class Target {
+        String id;
+        int kind;
+        int x;              // POINT
+        int y;
+        String edge;        // EDGE: "left" | "right" | "top" | "bottom"
+        Rect rect;          // RECT
+        int radius;
+        int priority;
+        boolean dismiss;    // closes the overlay when released on it
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("targetId", id);
+            map.put("dismiss", dismiss);
+            return map;
+        }
+    }
+
+    private final List<Target> targets;
+    private final SparseArray<ArrayList<Target>> grid = new SparseArray<>();
+    private int screenW = -1;
+    private int screenH = -1;
+
+    /// Target under the overlay during the current drag
+    @Nullable
+    Target captured;
+
+    OverlaySnapTargets(List<Target> targets) {
+        this.targets = targets;
+    }
+
+    private static int cellKey(int cx, int cy) {
+        return (cx << 16) | (cy & 0xFFFF);
+    }
+
+    /// Screen edges and the grid depend on the screen size, rebuilt when it changes (rotation).
+    private void index(int w, int h) {
+        if (w == screenW && h == screenH) return;
+        screenW = w;
+        screenH = h;
+        grid.clear();
+        for (Target t : targets) {
+            Rect reach = bounds(t);
+            reach.inset(-t.radius, -t.radius);
+            final int cx0 = Math.max(0, reach.left) / CELL_PX, cx1 = Math.max(0, Math.min(w, reach.right)) / CELL_PX;
+            final int cy0 = Math.max(0, reach.top) / CELL_PX, cy1 = Math.max(0, Math.min(h, reach.bottom)) / CELL_PX;
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int cy = cy0; cy <= cy1; cy++) {
+                    final int key = cellKey(cx, cy);
+                    ArrayList<Target> cell = grid.get(key);
+                    if (cell == null) {
+                        cell = new ArrayList<>(2);
+                        grid.put(key, cell);
+                    }
+                    cell.add(t);
+                }
+            }
+        }
+    }
+
+    private Rect bounds(Target t) {
+        switch (t.kind) {
+            case POINT:
+                return new Rect(t.x, t.y, t.x, t.y);
+            case EDGE:
+                switch (t.edge) {
+                    case "left":   return new Rect(0, 0, 0, screenH);
+                    case "right":  return new Rect(screenW, 0, screenW, screenH);
+                    case "top":    return new Rect(0, 0, screenW, 0);
+                    default:       return new Rect(0, screenH, screenW, screenH);
+                }
+            default:
+                return new Rect(t.rect);
+        }
+    }
+
+    /// Distance from (x, y) to the target, 0 inside a rect
+    private int distance(Target t, int x, int y) {
+        Rect b = bounds(t);
+        final int dx = x < b.left ? b.left - x : (x > b.right ? x - b.right : 0);
+        final int dy = y < b.top ? b.top - y : (y > b.bottom ? y - b.bottom : 0);
+        return (int) Math.sqrt((double) dx * dx + (double) dy * dy);
+    }
+
+    /// Target capturing an overlay centered on (x, y), or null.
+    @Nullable
+    Target query(int x, int y, int w, int h) {
+        index(w, h);
+        if (x < 0 || y < 0) return null;
+        ArrayList<Target> cell = grid.get(cellKey(x / CELL_PX, y / CELL_PX));
+        if (cell == null) return null;
+        Target best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0, n = cell.size(); i < n; i++) {
+            Target t = cell.get(i);
+            final int d = distance(t, x, y);
+            if (d > t.radius) continue;
+            if (best == null || t.priority > best.priority || (t.priority == best.priority && d < bestDistance)) {
+                best = t;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    /// Top-left position of a vw x vh overlay captured by t, keeping the other axis for edges.
+    Point destination(Target t, int x, int y, int vw, int vh) {
+        switch (t.kind) {
+            case POINT:
+                return new Point(t.x - vw / 2, t.y - vh / 2);
+            case EDGE:
+                switch (t.edge) {
+                    case "left":   return new Point(0, y);
+                    case "right":  return new Point(screenW - vw, y);
+                    case "top":    return new Point(x, 0);
+                    default:       return new Point(x, screenH - vh);
+                }
+            default:
+                return new Point(t.rect.centerX() - vw / 2, t.rect.centerY() - vh / 2);
+        }
+    }
+}
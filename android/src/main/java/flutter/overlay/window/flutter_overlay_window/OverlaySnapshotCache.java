@@ -0,0 +1,148 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.embedding.engine.FlutterEngine;
+
+/**
+ * Downscaled last frame of each overlay, shown as a placeholder while the next launch of the
+ * same engineId produces its first frame. Kept in an LRU bounded by {@link #budgetBytes}
+ * and mirrored to PNG files so it survives the service; disk work runs on a background thread.
+ */
+final class OverlaySnapshotCache {
+    private static final String TAG = "OverlaySnapshotCache";
+
+    // Static so they can be configured before the service is started
+    static volatile boolean enabled = true;
+    static volatile int budgetBytes = 4 * 1024 * 1024;
+    static volatile float scale = 0.5f;
+
+    interface Callback {
+        /// Called on the main thread, with null when there's no snapshot
+        void onSnapshot(@Nullable Bitmap bitmap);
+    }
+
+    private final File dir;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread ioThread = new HandlerThread("OverlaySnapshots");
+    private final Handler ioHandler;
+    private final LruCache<String, Bitmap> memory;
+    private long hits;
+    private long misses;
+
+    OverlaySnapshotCache(@NonNull File dir) {
+        this.dir = dir;
+        memory = new LruCache<String, Bitmap>(Math.max(1, budgetBytes)) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        ioThread.start();
+        ioHandler = new Handler(ioThread.getLooper());
+    }
+
+    void applyBudget() {
+        memory.resize(Math.max(1, budgetBytes));
+    }
+
+    /// One file per engineId, named by the id itself so two ids never share a snapshot
+    private File fileOf(String engineId) {
+        final byte[] id = engineId.getBytes(Charset.forName("UTF-8"));
+        return new File(dir, Base64.encodeToString(id, Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING) + ".png");
+    }
+
+    /// Grabs the engine's current frame; must be called while its surface is still attached.
+    void capture(String engineId, FlutterEngine engine) {
+        if (!enabled) return;
+        final Bitmap frame;
+        try {
+            frame = engine.getRenderer().getBitmap();
+        } catch (Throwable t) {
+            Log.w(TAG, "Snapshot failed for " + engineId, t);
+            return;
+        }
+        if (frame == null || frame.getWidth() == 0 || frame.getHeight() == 0) return;
+        final int w = Math.max(1, Math.round(frame.getWidth() * scale));
+        final int h = Math.max(1, Math.round(frame.getHeight() * scale));
+        final Bitmap small = Bitmap.createScaledBitmap(frame, w, h, true);
+        if (small != frame) frame.recycle();
+        memory.put(engineId, small);
+        final File file = fileOf(engineId);
+        ioHandler.post(() -> {
+            //noinspection ResultOfMethodCallIgnored
+            dir.mkdirs();
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                small.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to store snapshot of " + engineId, e);
+            }
+        });
+    }
+
+    /// Memory hits call back synchronously, disk hits once decoded on the background thread.
+    void load(String engineId, @NonNull Callback callback) {
+        if (!enabled) {
+            callback.onSnapshot(null);
+            return;
+        }
+        Bitmap cached = memory.get(engineId);
+        if (cached != null) {
+            hits++;
+            callback.onSnapshot(cached);
+            return;
+        }
+        final File file = fileOf(engineId);
+        ioHandler.post(() -> {
+            final Bitmap decoded = file.exists() ? BitmapFactory.decodeFile(file.getPath()) : null;
+            mainHandler.post(() -> {
+                if (decoded != null) {
+                    hits++;
+                    memory.put(engineId, decoded);
+                } else {
+                    misses++;
+                }
+                callback.onSnapshot(decoded);
+            });
+        });
+    }
+
+    void close() {
+        memory.evictAll();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            ioThread.quitSafely();
+        } else {
+            ioThread.quit();
+        }
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("enabled", enabled);
+        map.put("bytes", memory.size());
+        map.put("budgetBytes", memory.maxSize());
+        map.put("entries", memory.snapshot().size());
+        map.put("evictions", memory.evictionCount());
+        map.put("hits", hits);
+        map.put("misses", misses);
+        return map;
+    }
+}
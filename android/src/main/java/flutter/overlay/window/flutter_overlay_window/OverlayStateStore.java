@@ -0,0 +1,229 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * Key-value state shared by the main app and every overlay engine, held natively so it outlives
+ * any one engine and reads never reach another isolate.
+ * Every write gets a new version from one process-wide counter (0 = absent), which is what
+ * compareAndSet checks. Each engine talks to the store through its own {@link Client} on
+ * {@link OverlayConstants#STATE_TAG}, served on a background task queue; change notifications
+ * go only to the engines subscribed to the key, on the main thread.
+ */
+final class OverlayStateStore {
+
+    private static final class Entry {
+        final Object value;
+        final long version;
+
+        Entry(Object value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    private static final Object lock = new Object();
+    private static final Map<String, Entry> entries = new HashMap<>();
+    private static final Map<String, Set<Client>> subscribers = new HashMap<>();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static long lastVersion;
+    private static long writes;
+    private static long casFailures;
+
+    private OverlayStateStore() {}
+
+    /// @param seq the write that produced this state, lets a reader order a removal (version 0) against other writes
+    private static Map<String, Object> toMap(String key, @Nullable Entry e, long seq) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("key", key);
+        map.put("value", e != null ? e.value : null);
+        map.put("version", e != null ? e.version : 0L);
+        map.put("seq", seq);
+        return map;
+    }
+
+    private static Map<String, Object> toMap(String key, @Nullable Entry e) {
+        return toMap(key, e, e != null ? e.version : 0L);
+    }
+
+    /**
+     * Writes value, a null value removes the entry.
+     * @param expectedVersion -1 writes unconditionally, otherwise only if the entry is still at
+     *                        that version (0: only if absent)
+     * @return the entry after the call, with "ok" telling whether it was written
+     */
+    private static Map<String, Object> write(String key, @Nullable Object value, long expectedVersion) {
+        final Map<String, Object> result;
+        final List<Client> notify;
+        final Map<String, Object> change;
+        synchronized (lock) {
+            Entry current = entries.get(key);
+            final long currentVersion = current != null ? current.version : 0;
+            if (expectedVersion >= 0 && expectedVersion != currentVersion) {
+                casFailures++;
+                Map<String, Object> rejected = toMap(key, current);
+                rejected.put("ok", false);
+                return rejected;
+            }
+            Entry next = null;
+            if (value != null) {
+                next = new Entry(value, ++lastVersion);
+                entries.put(key, next);
+            } else if (current != null) {
+                entries.remove(key);
+                ++lastVersion;
+            }
+            writes++;
+            result = toMap(key, next, lastVersion);
+            result.put("ok", true);
+            Set<Client> subs = subscribers.get(key);
+            if (subs == null || subs.isEmpty() || (current == null && next == null)) return result;
+            notify = new ArrayList<>(subs);
+            change = toMap(key, next, lastVersion);
+        }
+        // Platform channel sends have to happen on the main thread
+        mainHandler.post(() -> {
+            for (Client c : notify) c.notifyChanged(change);
+        });
+        return result;
+    }
+
+    static Map<String, Object> stats() {
+        synchronized (lock) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("entries", entries.size());
+            map.put("version", lastVersion);
+            map.put("writes", writes);
+            map.put("casFailures", casFailures);
+            int subs = 0;
+            for (Set<Client> s : subscribers.values()) subs += s.size();
+            map.put("subscriptions", subs);
+            return map;
+        }
+    }
+
+    /** The store as seen by one engine. */
+    static final class Client implements MethodChannel.MethodCallHandler {
+        private final MethodChannel channel;
+        private final Set<String> keys = new HashSet<>();   // guarded by lock
+        private volatile boolean disposed;
+
+        Client(@NonNull BinaryMessenger messenger) {
+            channel = new MethodChannel(messenger, OverlayConstants.STATE_TAG, StandardMethodCodec.INSTANCE,
+                    OverlayService.backgroundQueue(messenger));
+            channel.setMethodCallHandler(this);
+        }
+
+        void dispose() {
+            disposed = true;
+            channel.setMethodCallHandler(null);
+            synchronized (lock) {
+                for (String key : keys) {
+                    Set<Client> subs = subscribers.get(key);
+                    if (subs == null) continue;
+                    subs.remove(this);
+                    if (subs.isEmpty()) subscribers.remove(key);
+                }
+                keys.clear();
+            }
+        }
+
+        private void notifyChanged(Map<String, Object> change) {
+            if (disposed) return;
+            channel.invokeMethod("changed", change);
+        }
+
+        /// @return the current entries, so a new subscriber starts in sync
+        private List<Map<String, Object>> subscribe(List<String> list) {
+            List<Map<String, Object>> current = new ArrayList<>();
+            synchronized (lock) {
+                for (String key : list) {
+                    if (!keys.add(key)) continue;
+                    Set<Client> subs = subscribers.get(key);
+                    if (subs == null) {
+                        subs = new HashSet<>();
+                        subscribers.put(key, subs);
+                    }
+                    subs.add(this);
+                    current.add(toMap(key, entries.get(key)));
+                }
+            }
+            return current;
+        }
+
+        private void unsubscribe(List<String> list) {
+            synchronized (lock) {
+                for (String key : list) {
+                    if (!keys.remove(key)) continue;
+                    Set<Client> subs = subscribers.get(key);
+                    if (subs == null) continue;
+                    subs.remove(this);
+                    if (subs.isEmpty()) subscribers.remove(key);
+                }
+            }
+        }
+
+        @Override
+        public void onMethodCall(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+            final String key = call.argument("key");
+            switch (call.method) {
+                case "get":
+                    synchronized (lock) {
+                        result.success(toMap(key, entries.get(key)));
+                    }
+                    break;
+                case "getAll": {
+                    final String prefix = call.argument("prefix");
+                    List<Map<String, Object>> list = new ArrayList<>();
+                    synchronized (lock) {
+                        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                            if (prefix == null || e.getKey().startsWith(prefix)) list.add(toMap(e.getKey(), e.getValue()));
+                        }
+                    }
+                    result.success(list);
+                    break;
+                }
+                case "set":
+                    result.success(write(key, call.argument("value"), -1));
+                    break;
+                case "compareAndSet": {
+                    Number expected = call.argument("expectedVersion");
+                    result.success(write(key, call.argument("value"), expected != null ? expected.longValue() : 0));
+                    break;
+                }
+                case "subscribe": {
+                    List<String> list = call.argument("keys");
+                    result.success(subscribe(list != null ? list : new ArrayList<>()));
+                    break;
+                }
+                case "unsubscribe": {
+                    List<String> list = call.argument("keys");
+                    if (list != null) unsubscribe(list);
+                    result.success(true);
+                    break;
+                }
+                case "stats":
+                    result.success(stats());
+                    break;
+                default:
+                    result.notImplemented();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resource accounting of one overlay engine, counters only so it can be polled every few seconds.
+ * "in" is main app -> overlay, "out" is overlay -> main app; message sizes are the bytes of the
+ * JSON-encoded message, as sent over the channel.
+ */
+final class OverlayStats {
+    final long createdAt = SystemClock.uptimeMillis();
+    volatile long lastInteractionAt = createdAt;
+    volatile long memoryDeltaBytes;
+    final AtomicLong messagesIn = new AtomicLong();
+    final AtomicLong bytesIn = new AtomicLong();
+    final AtomicLong messagesOut = new AtomicLong();
+    final AtomicLong bytesOut = new AtomicLong();
+    final AtomicLong layoutCount = new AtomicLong();
+
+    /// Java + native heap in use, sampled around engine creation to estimate its footprint
+    static long heapInUse() {
+        Runtime rt = Runtime.getRuntime();
+        return (rt.totalMemory() - rt.freeMemory()) + Debug.getNativeHeapAllocatedSize();
+    }
+
+    void onMessageIn(int size) {
+        messagesIn.incrementAndGet();
+        bytesIn.addAndGet(size);
+    }
+
+    void onMessageOut(int size) {
+        messagesOut.incrementAndGet();
+        bytesOut.addAndGet(size);
+    }
+
+    Map<String, Object> toMap(@Nullable View view) {
+        final long now = SystemClock.uptimeMillis();
+        Map<String, Object> map = new HashMap<>();
+        map.put("memoryDeltaBytes", memoryDeltaBytes);
+        map.put("surfaceWidthPx", view != null ? view.getWidth() : 0);
+        map.put("surfaceHeightPx", view != null ? view.getHeight() : 0);
+        map.put("ageMs", now - createdAt);
+        map.put("idleMs", now - lastInteractionAt);
+        map.put("messagesIn", messagesIn.get());
+        map.put("bytesIn", bytesIn.get());
+        map.put("messagesOut", messagesOut.get());
+        map.put("bytesOut", bytesOut.get());
+        map.put("layoutCount", layoutCount.get());
+        map.put("visible", view != null);
+        return map;
+    }
+}
@@ -0,0 +1,336 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.WindowManager;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * Opt-in recording of what drives the overlays, so real finger traces and bug reports can be
+ * replayed (see {@link OverlayTraceReplay}): the primary pointer of every touch, the channel
+ * commands of the app and of the overlays, the app's messages to the overlays, and every
+ * resulting relayout to compare a replay against. Off by default, a hook then costs one volatile
+ * read; while recording, records are appended to a buffer under one lock and written out on stop.
+ *
+ * File, little-endian: header [magic "OVTR" int32][version int16][0 int16][screen w, h int32][density float32]
+ * then records [ms since the previous record int32][type int8][payload]. Times are uptime millis,
+ * the clock of MotionEvents and of the replay's Handler:
+ * ENGINE       int16 index, int16 length, UTF-8 engineId (names the index for later records)
+ * TOUCH        int16 engine, int16 action, int32 ms since down, float32 x, y, rawX, rawY
+ * APP_CALL     int32 length, StandardMethodCodec call
+ * OVERLAY_CALL int16 engine, int32 length, StandardMethodCodec call
+ * MESSAGE      int32 length, JSONMessageCodec message sent to every overlay
+ * LAYOUT       int16 engine, int32 x, y, width, height, int32 updateViewLayout nanos
+ */
+final class OverlayTrace {
+    static final int MAGIC = 0x5254564F; // "OVTR"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 20;
+
+    static final byte ENGINE = 0;
+    static final byte TOUCH = 1;
+    static final byte APP_CALL = 2;
+    static final byte OVERLAY_CALL = 3;
+    static final byte MESSAGE = 4;
+    static final byte LAYOUT = 5;
+
+    /// Plugin methods that change the overlays; queries are left out of the trace
+    static final Set<String> RECORDED_CALLS = new HashSet<>(Arrays.asList(
+            "showOverlay", "closeOverlay", "moveOverlay", "moveOverlayAbsolute", "resizeOverlay",
+            "setSnapTargets", "setOverlayLayout", "configureLayoutGroup", "configureRefreshRate",
+            "configureScheduler"));
+
+    static final int DEFAULT_MAX_BYTES = 8 << 20;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /// One decoded record, the fields used depend on its type
+    static final class Record {
+        byte type;
+        long atMs;                  // since the start of the recording
+        String engineId;
+        int action;                 // TOUCH
+        int sinceDownMs;
+        float x, y, rawX, rawY;
+        byte[] payload;             // APP_CALL, OVERLAY_CALL, MESSAGE
+        int left, top, width, height; // LAYOUT
+        int layoutNanos;
+    }
+
+    static final class Trace {
+        int screenW;
+        int screenH;
+        float density;
+        final List<Record> records = new ArrayList<>();
+    }
+
+    private static volatile boolean recording;
+    private static final Object lock = new Object();
+    private static ByteBuffer buffer;
+    private static final Map<String, Integer> engines = new HashMap<>();
+    private static File file;
+    private static int maxBytes;
+    private static long startedAt;
+    private static long lastAt;
+    private static int records;
+    private static boolean truncated;
+
+    private OverlayTrace() {}
+
+    static boolean isRecording() {
+        return recording;
+    }
+
+    /// false when a recording is already running
+    static boolean start(File target, int limitBytes, int screenW, int screenH, float density) {
+        synchronized (lock) {
+            if (recording) return false;
+            file = target;
+            maxBytes = Math.max(HEADER_BYTES + 64, limitBytes);
+            buffer = ByteBuffer.allocate(Math.min(maxBytes, 64 * 1024)).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+                    .putInt(screenW).putInt(screenH).putFloat(density);
+            engines.clear();
+            startedAt = lastAt = SystemClock.uptimeMillis();
+            records = 0;
+            truncated = false;
+            recording = true;
+            return true;
+        }
+    }
+
+    /// Writes the file; {path, bytes, records, truncated, durationMs}, null when not recording
+    @Nullable
+    static Map<String, Object> stop() throws IOException {
+        final ByteBuffer out;
+        final File target;
+        final Map<String, Object> map = new HashMap<>();
+        synchronized (lock) {
+            if (!recording) return null;
+            recording = false;
+            out = buffer;
+            target = file;
+            buffer = null;
+            map.put("records", records);
+            map.put("truncated", truncated);
+            map.put("durationMs", SystemClock.uptimeMillis() - startedAt);
+        }
+        File dir = target.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) throw new IOException("Can't create " + dir);
+        OutputStream stream = new FileOutputStream(target);
+        try {
+            stream.write(out.array(), 0, out.position());
+        } finally {
+            stream.close();
+        }
+        map.put("path", target.getAbsolutePath());
+        map.put("bytes", out.position());
+        return map;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Hooks
+
+    static void touch(String engineId, MotionEvent event) {
+        if (!recording) return;
+        synchronized (lock) {
+            if (!begin(TOUCH, engineId, 2 + 2 + 4 + 16)) return;
+            buffer.putShort((short) engines.get(engineId).intValue());
+            buffer.putShort((short) event.getAction());
+            buffer.putInt((int) (event.getEventTime() - event.getDownTime()));
+            buffer.putFloat(event.getX()).putFloat(event.getY()).putFloat(event.getRawX()).putFloat(event.getRawY());
+        }
+    }
+
+    static void appCall(MethodCall call) {
+        if (!recording || !RECORDED_CALLS.contains(call.method)) return;
+        final byte[] bytes = bytesOf(StandardMethodCodec.INSTANCE.encodeMethodCall(call));
+        synchronized (lock) {
+            if (!begin(APP_CALL, null, 4 + bytes.length)) return;
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    static void overlayCall(String engineId, MethodCall call) {
+        if (!recording) return;
+        final byte[] bytes = bytesOf(StandardMethodCodec.INSTANCE.encodeMethodCall(call));
+        synchronized (lock) {
+            if (!begin(OVERLAY_CALL, engineId, 2 + 4 + bytes.length)) return;
+            buffer.putShort((short) engines.get(engineId).intValue());
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    /// A message to every overlay, as encoded for the engines
+    static void message(ByteBuffer encoded) {
+        if (!recording) return;
+        final byte[] bytes = bytesOf(encoded);
+        synchronized (lock) {
+            if (!begin(MESSAGE, null, 4 + bytes.length)) return;
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    /// Every updateViewLayout, recorded and handed to a running replay
+    static void layout(String engineId, WindowManager.LayoutParams params, long nanos) {
+        final OverlayTraceReplay replay = OverlayTraceReplay.active;
+        if (replay != null) replay.onLayout(engineId, params, nanos);
+        if (!recording) return;
+        synchronized (lock) {
+            if (!begin(LAYOUT, engineId, 2 + 16 + 4)) return;
+            buffer.putShort((short) engines.get(engineId).intValue());
+            buffer.putInt(params.x).putInt(params.y).putInt(params.width).putInt(params.height);
+            buffer.putInt((int) Math.min(Integer.MAX_VALUE, nanos));
+        }
+    }
+
+    /// Under lock: writes the record header (and the engine's name the first time), false once full
+    private static boolean begin(byte type, @Nullable String engineId, int payloadBytes) {
+        if (!recording) return false;
+        byte[] name = null;
+        if (engineId != null && !engines.containsKey(engineId)) name = engineId.getBytes(UTF8);
+        final int need = (name != null ? 5 + 4 + name.length : 0) + 5 + payloadBytes;
+        if (buffer.position() + need > maxBytes) {
+            truncated = true;
+            return false;
+        }
+        if (buffer.remaining() < need) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(maxBytes, Math.max(buffer.capacity() * 2, buffer.position() + need)))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        final long now = SystemClock.uptimeMillis();
+        if (name != null) {
+            final int index = engines.size();
+            engines.put(engineId, index);
+            putHeader(now, ENGINE);
+            buffer.putShort((short) index).putShort((short) name.length).put(name);
+        }
+        putHeader(now, type);
+        records++;
+        return true;
+    }
+
+    private static void putHeader(long now, byte type) {
+        buffer.putInt((int) Math.min(Integer.MAX_VALUE, now - lastAt));
+        buffer.put(type);
+        lastAt = now;
+    }
+
+    /// Flutter's codecs leave the position at the end of the encoded bytes
+    private static byte[] bytesOf(ByteBuffer encoded) {
+        byte[] bytes = new byte[encoded.position()];
+        ByteBuffer src = encoded.duplicate();
+        src.flip();
+        src.get(bytes);
+        return bytes;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Reading
+
+    static Trace read(File source) throws IOException {
+        final byte[] bytes = new byte[(int) source.length()];
+        InputStream in = new FileInputStream(source);
+        try {
+            int off = 0;
+            while (off < bytes.length) {
+                final int n = in.read(bytes, off, bytes.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+        } finally {
+            in.close();
+        }
+        ByteBuffer b = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < HEADER_BYTES || b.getInt() != MAGIC) throw new IOException("Not an overlay trace: " + source);
+        final int version = b.getShort();
+        if (version != VERSION) throw new IOException("Unsupported trace version " + version);
+        b.getShort();
+        Trace trace = new Trace();
+        trace.screenW = b.getInt();
+        trace.screenH = b.getInt();
+        trace.density = b.getFloat();
+
+        final List<String> names = new ArrayList<>();
+        long at = 0;
+        try {
+            while (b.hasRemaining()) {
+                at += b.getInt();
+                Record r = new Record();
+                r.type = b.get();
+                r.atMs = at;
+                switch (r.type) {
+                    case ENGINE: {
+                        final int index = b.getShort();
+                        final byte[] name = new byte[b.getShort()];
+                        b.get(name);
+                        while (names.size() <= index) names.add(null);
+                        names.set(index, new String(name, UTF8));
+                        continue;
+                    }
+                    case TOUCH:
+                        r.engineId = names.get(b.getShort());
+                        r.action = b.getShort();
+                        r.sinceDownMs = b.getInt();
+                        r.x = b.getFloat();
+                        r.y = b.getFloat();
+                        r.rawX = b.getFloat();
+                        r.rawY = b.getFloat();
+                        break;
+                    case OVERLAY_CALL:
+                        r.engineId = names.get(b.getShort());
+                        // fall through
+                    case APP_CALL:
+                    case MESSAGE:
+                        r.payload = new byte[b.getInt()];
+                        b.get(r.payload);
+                        break;
+                    case LAYOUT:
+                        r.engineId = names.get(b.getShort());
+                        r.left = b.getInt();
+                        r.top = b.getInt();
+                        r.width = b.getInt();
+                        r.height = b.getInt();
+                        r.layoutNanos = b.getInt();
+                        break;
+                    default:
+                        throw new IOException("Unknown trace record " + r.type + " at " + b.position());
+                }
+                trace.records.add(r);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            // A cut-off last record, e.g. copied while it was being written: keep what's complete
+        }
+        return trace;
+    }
+
+    /// Default location of a new recording
+    static File defaultFile(File cacheDir) {
+        return new File(new File(cacheDir, "overlay_traces"), "trace_" + System.currentTimeMillis() + ".ovtr");
+    }
+}
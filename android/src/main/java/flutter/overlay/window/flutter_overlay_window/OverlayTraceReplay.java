@@ -0,0 +1,253 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.WindowManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * Feeds a recorded {@link OverlayTrace} back into OverlayService. Records are dispatched one
+ * after the other on the main looper at their recorded offsets (divided by speed), so a trace
+ * drives the same sequence of calls on every run and on every build. The relayouts it causes are
+ * collected and compared, per overlay, with the ones recorded; the report also holds the
+ * updateViewLayout timings of both runs. One replay at a time, main thread only.
+ */
+final class OverlayTraceReplay {
+    /// Lets snap and resize animations started by the last input finish before the report
+    static final long SETTLE_MS = 1000;
+
+    interface Target {
+        void touch(String engineId, MotionEvent event);
+
+        void overlayCall(String engineId, MethodCall call, MethodChannel.Result result);
+
+        void appCall(MethodCall call, MethodChannel.Result result);
+
+        void message(ByteBuffer encoded, int size);
+    }
+
+    interface Callback {
+        void done(Map<String, Object> report);
+    }
+
+    @Nullable
+    static volatile OverlayTraceReplay active;
+
+    private final OverlayTrace.Trace trace;
+    private final Target target;
+    private final Callback callback;
+    private final double speed;
+    private final boolean sameScreen;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, List<int[]>> expected = new LinkedHashMap<>();
+    private final Map<String, List<int[]>> actual = new LinkedHashMap<>();
+    private final OverlayHistogram recordedTiming = new OverlayHistogram(OverlayHistogram.LAYOUT_BOUNDS_MS);
+    private final OverlayHistogram replayedTiming = new OverlayHistogram(OverlayHistogram.LAYOUT_BOUNDS_MS);
+    private long startedAt;
+    private int next;
+    private int inputs;
+    private int failedCalls;
+
+    private final MethodChannel.Result calls = new MethodChannel.Result() {
+        @Override
+        public void success(@Nullable Object result) {}
+
+        @Override
+        public void error(@NonNull String code, @Nullable String message, @Nullable Object details) {
+            failedCalls++;
+        }
+
+        @Override
+        public void notImplemented() {
+            failedCalls++;
+        }
+    };
+
+    private OverlayTraceReplay(OverlayTrace.Trace trace, Target target, double speed, int screenW, int screenH, Callback callback) {
+        this.trace = trace;
+        this.target = target;
+        this.speed = speed > 0 ? speed : 1;
+        this.sameScreen = trace.screenW == screenW && trace.screenH == screenH;
+        this.callback = callback;
+        for (OverlayTrace.Record r : trace.records) {
+            if (r.type != OverlayTrace.LAYOUT) continue;
+            listOf(expected, r.engineId).add(new int[]{r.left, r.top, r.width, r.height});
+            recordedTiming.record(r.layoutNanos);
+        }
+    }
+
+    /// false when another replay is running
+    static boolean start(OverlayTrace.Trace trace, Target target, double speed, int screenW, int screenH, Callback callback) {
+        if (active != null) return false;
+        OverlayTraceReplay replay = new OverlayTraceReplay(trace, target, speed, screenW, screenH, callback);
+        active = replay;
+        replay.startedAt = SystemClock.uptimeMillis();
+        replay.schedule();
+        return true;
+    }
+
+    /// Service going away: reports what was replayed so far
+    static void cancel() {
+        final OverlayTraceReplay replay = active;
+        if (replay != null) replay.finish(true);
+    }
+
+    private static List<int[]> listOf(Map<String, List<int[]>> map, String engineId) {
+        List<int[]> list = map.get(engineId);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(engineId, list);
+        }
+        return list;
+    }
+
+    private long dueAt(OverlayTrace.Record r) {
+        return startedAt + (long) (r.atMs / speed);
+    }
+
+    /// Posts the next input record; LAYOUT records are expectations, not inputs
+    private void schedule() {
+        while (next < trace.records.size() && trace.records.get(next).type == OverlayTrace.LAYOUT) next++;
+        if (next >= trace.records.size()) {
+            handler.postAtTime(() -> finish(false), this, SystemClock.uptimeMillis() + SETTLE_MS);
+            return;
+        }
+        final OverlayTrace.Record r = trace.records.get(next++);
+        handler.postAtTime(() -> {
+            dispatch(r);
+            schedule();
+        }, this, dueAt(r));
+    }
+
+    private void dispatch(OverlayTrace.Record r) {
+        inputs++;
+        switch (r.type) {
+            case OverlayTrace.TOUCH: {
+                final long now = SystemClock.uptimeMillis();
+                // Raw coordinates drive the drag, window-relative ones the touchable regions
+                MotionEvent event = MotionEvent.obtain(now - r.sinceDownMs, now, r.action, r.rawX, r.rawY, 0);
+                event.offsetLocation(r.x - r.rawX, r.y - r.rawY);
+                target.touch(r.engineId, event);
+                event.recycle();
+                break;
+            }
+            case OverlayTrace.APP_CALL:
+                target.appCall(StandardMethodCodec.INSTANCE.decodeMethodCall(direct(r.payload)), calls);
+                break;
+            case OverlayTrace.OVERLAY_CALL:
+                target.overlayCall(r.engineId, StandardMethodCodec.INSTANCE.decodeMethodCall(direct(r.payload)), calls);
+                break;
+            case OverlayTrace.MESSAGE: {
+                ByteBuffer encoded = ByteBuffer.allocateDirect(r.payload.length);
+                encoded.put(r.payload);
+                target.message(encoded, r.payload.length);
+                break;
+            }
+        }
+    }
+
+    /// A decodable buffer: position 0, limit at the end of the bytes
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer b = ByteBuffer.allocateDirect(bytes.length);
+        b.put(bytes);
+        b.flip();
+        return b;
+    }
+
+    void onLayout(String engineId, WindowManager.LayoutParams params, long nanos) {
+        listOf(actual, engineId).add(new int[]{params.x, params.y, params.width, params.height});
+        replayedTiming.record(nanos);
+    }
+
+    private void finish(boolean cancelled) {
+        if (active != this) return;
+        active = null;
+        handler.removeCallbacksAndMessages(this);
+        callback.done(report(cancelled));
+    }
+
+    private Map<String, Object> report(boolean cancelled) {
+        long recordedLayouts = 0;
+        long replayedLayouts = 0;
+        long matched = 0;
+        int maxDelta = 0;
+        int finalDelta = 0;
+        Map<String, Object> firstMismatch = null;
+        List<String> diverged = new ArrayList<>();
+        for (List<int[]> list : actual.values()) replayedLayouts += list.size();
+        for (Map.Entry<String, List<int[]>> e : expected.entrySet()) {
+            final List<int[]> want = e.getValue();
+            final List<int[]> got = actual.containsKey(e.getKey()) ? actual.get(e.getKey()) : new ArrayList<>();
+            recordedLayouts += want.size();
+            final int n = Math.min(want.size(), got.size());
+            // Layouts match up to the first difference in position or size, or until one sequence ends
+            int mismatchAt = -1;
+            for (int i = 0; i < n; i++) {
+                final int d = delta(want.get(i), got.get(i));
+                maxDelta = Math.max(maxDelta, d);
+                if (d != 0 && mismatchAt < 0) mismatchAt = i;
+            }
+            if (mismatchAt < 0 && want.size() != got.size()) mismatchAt = n;
+            matched += mismatchAt < 0 ? n : mismatchAt;
+            if (!want.isEmpty() && !got.isEmpty()) {
+                finalDelta = Math.max(finalDelta, delta(want.get(want.size() - 1), got.get(got.size() - 1)));
+            }
+            if (mismatchAt >= 0) {
+                diverged.add(e.getKey());
+                if (firstMismatch == null) {
+                    firstMismatch = new HashMap<>();
+                    firstMismatch.put("engineId", e.getKey());
+                    firstMismatch.put("index", mismatchAt);
+                    firstMismatch.put("expected", mismatchAt < want.size() ? asList(want.get(mismatchAt)) : null);
+                    firstMismatch.put("actual", mismatchAt < got.size() ? asList(got.get(mismatchAt)) : null);
+                }
+            }
+        }
+        Map<String, Object> map = new HashMap<>();
+        map.put("cancelled", cancelled);
+        map.put("records", trace.records.size());
+        map.put("inputs", inputs);
+        map.put("failedCalls", failedCalls);
+        map.put("speed", speed);
+        map.put("sameScreen", sameScreen);
+        map.put("durationMs", SystemClock.uptimeMillis() - startedAt);
+        map.put("recordedLayouts", recordedLayouts);
+        map.put("replayedLayouts", replayedLayouts);
+        map.put("matchedLayouts", matched);
+        map.put("identical", diverged.isEmpty() && recordedLayouts == replayedLayouts);
+        map.put("divergedEngines", diverged);
+        map.put("firstMismatch", firstMismatch);
+        map.put("maxDeltaPx", maxDelta);
+        map.put("finalDeltaPx", finalDelta);
+        map.put("recordedLayoutTiming", recordedTiming.toMap());
+        map.put("replayedLayoutTiming", replayedTiming.toMap());
+        return map;
+    }
+
+    /// Largest difference between two [x, y, width, height]
+    private static int delta(int[] a, int[] b) {
+        int d = 0;
+        for (int i = 0; i < 4; i++) d = Math.max(d, Math.abs(a[i] - b[i]));
+        return d;
+    }
+
+    private static List<Integer> asList(int[] values) {
+        return Arrays.asList(values[0], values[1], values[2], values[3]);
+    }
+}
@@ -0,0 +1,176 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Liveness probe of the overlay isolates: pings every engine over its per-engine MethodChannel,
+ * answered by the handler FlutterOverlayWindow.overlayListener registers there. Without a handler
+ * the message would sit in the engine's channel buffer until the next ping evicts it, so a ping
+ * only counts as answered by a reply from the isolate (success, error or notImplemented);
+ * an engine missing {@link #maxMisses} deadlines in a row is flagged unresponsive.
+ * Everything runs on the main looper.
+ */
+final class OverlayWatchdog {
+    static final String POLICY_NONE = "none";
+    static final String POLICY_REATTACH = "reattach";
+    static final String POLICY_RECREATE = "recreate";
+
+    // Static so it can be configured before the service is started, 0 = disabled
+    static volatile long intervalMs = 0;
+    static volatile long deadlineMs = 1000;
+    static volatile int maxMisses = 3;
+    static volatile String restartPolicy = POLICY_NONE;
+
+    interface Listener {
+        void onUnresponsive(String engineId, String policy);
+    }
+
+    private static final class Health {
+        final OverlayHistogram latency = new OverlayHistogram(OverlayHistogram.PING_BOUNDS_MS);
+        long seq;
+        long pendingSeq;
+        long lastReplyAt;
+        int consecutiveMisses;
+        int totalMisses;
+        int restarts;
+        boolean unresponsive;
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("latency", latency.toMap());
+            map.put("consecutiveMisses", consecutiveMisses);
+            map.put("totalMisses", totalMisses);
+            map.put("restarts", restarts);
+            map.put("unresponsive", unresponsive);
+            map.put("lastReplyAgoMs", lastReplyAt == 0 ? -1 : SystemClock.uptimeMillis() - lastReplyAt);
+            return map;
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, MethodChannel> channels;
+    private final Listener listener;
+    private final ConcurrentHashMap<String, Health> health = new ConcurrentHashMap<>();
+    private boolean running;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            if (!running) return;
+            for (Map.Entry<String, MethodChannel> e : channels.entrySet()) {
+                ping(e.getKey(), e.getValue());
+            }
+            handler.postDelayed(this, intervalMs);
+        }
+    };
+
+    OverlayWatchdog(@NonNull Map<String, MethodChannel> channels, @NonNull Listener listener) {
+        this.channels = channels;
+        this.listener = listener;
+    }
+
+    /// (Re)starts the probe with the current static config, stops it when the interval is 0.
+    void start() {
+        stop();
+        if (intervalMs <= 0) return;
+        running = true;
+        handler.postDelayed(tick, intervalMs);
+    }
+
+    void stop() {
+        running = false;
+        handler.removeCallbacksAndMessages(null);
+        for (Health h : health.values()) h.pendingSeq = 0;
+    }
+
+    void forget(String engineId) {
+        health.remove(engineId);
+    }
+
+    private Health healthOf(String engineId) {
+        Health h = health.get(engineId);
+        if (h == null) {
+            h = new Health();
+            health.put(engineId, h);
+        }
+        return h;
+    }
+
+    private void ping(final String engineId, MethodChannel channel) {
+        final Health h = healthOf(engineId);
+        if (h.pendingSeq != 0) return; // previous ping still within its deadline
+        final long seq = ++h.seq;
+        h.pendingSeq = seq;
+        final long sentNanos = System.nanoTime();
+        channel.invokeMethod("ping", seq, new MethodChannel.Result() {
+            @Override
+            public void success(@Nullable Object result) {
+                onReply(engineId, h, seq, sentNanos);
+            }
+
+            @Override
+            public void error(@NonNull String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+                onReply(engineId, h, seq, sentNanos);
+            }
+
+            @Override
+            public void notImplemented() {
+                onReply(engineId, h, seq, sentNanos);
+            }
+        });
+        handler.postDelayed(() -> onDeadline(engineId, h, seq), deadlineMs);
+    }
+
+    private void onReply(String engineId, Health h, long seq, long sentNanos) {
+        h.latency.record(System.nanoTime() - sentNanos);
+        h.lastReplyAt = SystemClock.uptimeMillis();
+        if (seq != h.pendingSeq) return; // late reply, the miss is already counted
+        h.pendingSeq = 0;
+        h.consecutiveMisses = 0;
+        if (h.unresponsive) {
+            h.unresponsive = false;
+            OverlayEvents.emit("responsive", engineId, h.toMap());
+        }
+    }
+
+    private void onDeadline(String engineId, Health h, long seq) {
+        if (!running || h.pendingSeq != seq) return;
+        h.pendingSeq = 0;
+        h.consecutiveMisses++;
+        h.totalMisses++;
+        if (h.consecutiveMisses >= maxMisses && !h.unresponsive) {
+            h.unresponsive = true;
+            OverlayEvents.emit("unresponsive", engineId, h.toMap());
+            final String policy = restartPolicy;
+            if (!POLICY_NONE.equals(policy)) {
+                h.restarts++;
+                h.consecutiveMisses = 0;
+                listener.onUnresponsive(engineId, policy);
+            }
+        }
+    }
+
+    @Nullable
+    Map<String, Object> snapshot(@Nullable String engineId, boolean all) {
+        if (!all) {
+            Health h = health.get(engineId);
+            return h != null ? h.toMap() : null;
+        }
+        Map<String, Object> map = new HashMap<>();
+        for (Map.Entry<String, Health> e : health.entrySet()) {
+            map.put(e.getKey(), e.getValue().toMap());
+        }
+        return map;
+    }
+}
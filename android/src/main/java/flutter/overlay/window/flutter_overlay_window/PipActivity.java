@@ -2,22 +2,24 @@ package flutter.overlay.window.flutter_overlay_window;
 
 import android.app.Activity;
 import android.app.PictureInPictureParams;
+import android.content.Intent;
 import android.content.res.Configuration;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Rational;
-import android.view.View;
-import android.view.ViewGroup;
+import android.webkit.JavascriptInterface;
 import android.webkit.WebChromeClient;
-import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -28,11 +30,71 @@ import java.util.regex.Pattern;
  */
 public class PipActivity extends Activity {
     private WebView webView;
+    private PipNativePlayer nativePlayer;   // direct media, instead of webView
     private static final String TAG = "PipActivity";
+    static final String EXTRA_REQUESTED_AT = "requestedAt"; // System.nanoTime of the showYouTubePip call
+
+    // This regex pattern covers most common YouTube URL formats.
+    private static final Pattern YOUTUBE_ID = Pattern.compile(
+            "(?<=watch\\?v=|/videos/|embed\\/|youtu.be\\/|\\/v\\/|\\/e\\/|watch\\?v%3D|watch\\?feature=player_embedded&v=|%2Fvideos%2F|embed%2Fvideos%2F|youtu.be%2F|\\/v%2F)[^#\\&\\?\\n]*");
+
+    private PipMetrics.Launch launch;
+    private final Handler handler = new Handler(Looper.getMainLooper());
 
     // Reusable JavaScript snippet to find and play the primary video element on a page.
     private final String JS_PLAY_VIDEO = "javascript:var video = document.querySelector('video'); if(video) { video.play(); }";
 
+    // Reports the primary video's playback and intrinsic size through OverlayPipBridge,
+    // also for a video element added after the page loaded
+    static final String BRIDGE_NAME = "OverlayPipBridge";
+    private static final String JS_BRIDGE =
+            "(function() {" +
+            "  if (window.__overlayPip) return; window.__overlayPip = true;" +
+            "  function hook(v) {" +
+            "    if (v.__overlayPip) return; v.__overlayPip = true;" +
+            "    function report() { " + BRIDGE_NAME + ".onState(v.paused, v.videoWidth, v.videoHeight); }" +
+            "    v.addEventListener('playing', function() { " + BRIDGE_NAME + ".onPlaying(v.videoWidth, v.videoHeight); });" +
+            "    ['pause', 'play', 'loadedmetadata', 'resize'].forEach(function(e) { v.addEventListener(e, report); });" +
+            "    if (!v.paused && v.readyState > 2) " + BRIDGE_NAME + ".onPlaying(v.videoWidth, v.videoHeight); else v.play();" +
+            "  }" +
+            "  var v = document.querySelector('video'); if (v) hook(v);" +
+            "  new MutationObserver(function() { var v = document.querySelector('video'); if (v) hook(v); })" +
+            "    .observe(document.documentElement, {childList: true, subtree: true});" +
+            "})();";
+
+    // PiP is entered on the first 'playing' event; pages that never play a video get it after this
+    private static final long PLAYBACK_TIMEOUT_MS = 5000;
+    // A pause reported this soon after a PiP transition was caused by it, not by the user
+    private static final long TRANSITION_PAUSE_MS = 1000;
+
+    private boolean pipRequested;
+    private int videoWidth;
+    private int videoHeight;
+    private boolean videoPaused;
+    private long lastTransitionAt;
+    private final Runnable enterWithoutPlayback = () -> enterPip("timeout");
+
+    /// Called by the page's JavaScript on the JavaBridge thread
+    private final class Bridge {
+        @JavascriptInterface
+        public void onPlaying(int width, int height) {
+            handler.post(() -> {
+                onVideoSize(width, height);
+                if (launch != null && launch.playingAt == 0) launch.playingAt = System.nanoTime();
+                enterPip("playing");
+            });
+        }
+
+        @JavascriptInterface
+        public void onState(boolean paused, int width, int height) {
+            handler.post(() -> {
+                onVideoSize(width, height);
+                videoPaused = paused;
+                if (paused && SystemClock.uptimeMillis() - lastTransitionAt < TRANSITION_PAUSE_MS) play();
+            });
+        }
+    }
+
     /**
      * Extracts the YouTube video ID from a variety of URL formats (e.g., watch, youtu.be, shorts).
      * This is a key optimization, as it allows us to build a lightweight "embed" URL.
@@ -43,10 +105,7 @@ public class PipActivity extends Activity {
         if (youtubeUrl == null || youtubeUrl.trim().length() <= 0) {
             return null;
         }
-        // This regex pattern covers most common YouTube URL formats.
-        String pattern = "(?<=watch\\?v=|/videos/|embed\\/|youtu.be\\/|\\/v\\/|\\/e\\/|watch\\?v%3D|watch\\?feature=player_embedded&v=|%2Fvideos%2F|embed%2Fvideos%2F|youtu.be%2F|\\/v%2F)[^#\\&\\?\\n]*";
-        Pattern compiledPattern = Pattern.compile(pattern);
-        Matcher matcher = compiledPattern.matcher(youtubeUrl);
+        Matcher matcher = YOUTUBE_ID.matcher(youtubeUrl);
         if (matcher.find()) {
             return matcher.group();
         }
@@ -57,51 +116,108 @@ public class PipActivity extends Activity {
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        launch = PipMetrics.begin(getIntent().getLongExtra(EXTRA_REQUESTED_AT, System.nanoTime()));
+
+        launch.createdAt = System.nanoTime();
+        loadUrlOf(getIntent());
+    }
+
+    /// The WebView path, created on first use; replaces the native player if it was showing
+    private void showWeb(String url) {
+        releaseNativePlayer();
+        if (webView == null) {
+            // Adopts the prewarmed WebView when there's one, see PipWebViewPool for the settings
+            launch.warm = PipWebViewPool.hasSpare();
+            webView = PipWebViewPool.obtain(this);
+            setUpWebView();
+            setContentView(webView);
+        }
+        webView.loadUrl(url);
+    }
 
-        webView = new WebView(this);
-        setContentView(webView);
+    /// The native path for direct media; replaces the WebView if it was showing
+    private void showNative(Uri uri) {
+        releaseWebView();
+        if (nativePlayer == null) {
+            nativePlayer = new PipNativePlayer(this, new PipNativePlayer.Listener() {
+                @Override
+                public void onPlaying(int width, int height) {
+                    onVideoSize(width, height);
+                    if (launch != null && launch.playingAt == 0) launch.playingAt = System.nanoTime();
+                    enterPip("playing");
+                }
 
-        // --- AGGRESSIVE PERFORMANCE OPTIMIZATIONS ---
-        WebSettings s = webView.getSettings();
-        s.setJavaScriptEnabled(true);
-        s.setMediaPlaybackRequiresUserGesture(false); // Crucial for autoplay to work.
-        s.setDomStorageEnabled(true);
+                @Override
+                public void onVideoSize(int width, int height) {
+                    PipActivity.this.onVideoSize(width, height);
+                }
 
-        // Reduce WebView overhead by disabling features not needed for video playback.
-        s.setAllowFileAccess(false);
-        s.setGeolocationEnabled(false);
-        s.setSupportZoom(false);
+                @Override
+                public void onError() {
+                    // Not playable natively after all, let the WebView try
+                    Log.d(TAG, "Native playback failed, falling back to WebView: " + uri);
+                    if (launch != null) launch.path = "web";
+                    showWeb(uri.toString());
+                }
+            });
+            setContentView(nativePlayer.view);
+        }
+        nativePlayer.play(uri);
+        // Audio-only media never renders a video frame
+        handler.removeCallbacks(enterWithoutPlayback);
+        if (!pipRequested) handler.postDelayed(enterWithoutPlayback, PLAYBACK_TIMEOUT_MS);
+    }
 
-        // KEY FIX FOR SMOOTHNESS: Forces the WebView onto a hardware-accelerated layer.
-        // This allows the GPU to handle resizing smoothly without waiting for the WebView to repaint.
-        webView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+    private void releaseNativePlayer() {
+        if (nativePlayer == null) return;
+        nativePlayer.release();
+        nativePlayer = null;
+    }
 
-        // --- End of Performance Optimizations ---
+    private void releaseWebView() {
+        if (webView == null) return;
+        // Detached from the view hierarchy, then kept as the next spare or destroyed.
+        webView.removeJavascriptInterface(BRIDGE_NAME);
+        PipWebViewPool.recycle(webView);
+        webView = null;
+    }
 
+    private void setUpWebView() {
+        webView.addJavascriptInterface(new Bridge(), BRIDGE_NAME);
         webView.setWebChromeClient(new WebChromeClient());
         webView.setWebViewClient(new WebViewClient() {
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
                 Log.d(TAG, "Page finished loading: " + url);
+                if (launch != null && launch.pageLoadedAt == 0) launch.pageLoadedAt = System.nanoTime();
 
-                // Start video playback as soon as the page is ready.
-                view.evaluateJavascript(JS_PLAY_VIDEO, null);
-
-                // Enter PiP mode after a short delay to allow the video to initialize.
-                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                        enterPictureInPictureModeWithAspectRatio();
-                    } else {
-                        // PiP not supported on older Android versions.
-                        finish();
-                    }
-                }, 500);
+                // Starts video playback and reports it, PiP is entered from Bridge.onPlaying
+                view.evaluateJavascript(JS_BRIDGE, null);
+                if (!pipRequested) {
+                    handler.removeCallbacks(enterWithoutPlayback);
+                    handler.postDelayed(enterWithoutPlayback, PLAYBACK_TIMEOUT_MS);
+                }
             }
         });
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        // singleTask: a new showYouTubePip while this one is open
+        super.onNewIntent(intent);
+        setIntent(intent);
+        launch = PipMetrics.begin(intent.getLongExtra(EXTRA_REQUESTED_AT, System.nanoTime()));
+        launch.createdAt = System.nanoTime();
+        videoWidth = 0;
+        videoHeight = 0;
+        videoPaused = false;
+        loadUrlOf(intent);
+    }
 
+    private void loadUrlOf(Intent intent) {
         // --- URL CONVERSION LOGIC FOR PERFORMANCE ---
-        String originalUrl = getIntent().getStringExtra("url");
+        String originalUrl = intent.getStringExtra("url");
         if (originalUrl == null || originalUrl.isEmpty()) {
             finish(); // No URL provided, so nothing to do.
             return;
@@ -109,11 +225,19 @@ public class PipActivity extends Activity {
 
         String finalUrl;
         String videoId = getYoutubeVideoId(originalUrl);
+        Uri uri = Uri.parse(originalUrl);
 
-        if (videoId != null) {
+        if (videoId == null && PipNativePlayer.canPlay(uri)) {
+            // Direct media or a local file: no need for a WebView
+            launch.path = "native";
+            Log.d(TAG, "Playing natively: " + originalUrl);
+            showNative(uri);
+            return;
+        } else if (videoId != null) {
             // It's a YouTube URL, so build the high-performance embed URL.
             // The embed page is extremely lightweight compared to the full YouTube site.
             finalUrl = "https://www.youtube.com/embed/" + videoId + "?autoplay=1";
+            launch.path = "youtube";
             Log.d(TAG, "Converted to YouTube embed URL: " + finalUrl);
         } else {
             // Not a YouTube URL, or the format is unrecognized. Load the original URL.
@@ -121,40 +245,92 @@ public class PipActivity extends Activity {
             Log.d(TAG, "Not a recognized YouTube URL. Loading original: " + finalUrl);
         }
 
-        webView.loadUrl(finalUrl);
+        showWeb(finalUrl);
         // --- END OF URL CONVERSION LOGIC ---
     }
 
-    // Helper method to enter PiP mode with a standard 16:9 aspect ratio.
-    private void enterPictureInPictureModeWithAspectRatio() {
+    private void enterPip(String trigger) {
+        handler.removeCallbacks(enterWithoutPlayback);
+        if (pipRequested) {
+            // Relaunched while in PiP: the window is already there, the new video playing in it completes the launch
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && isInPictureInPictureMode()) completeLaunch();
+            return;
+        }
+        pipRequested = true;
+        Log.d(TAG, "Entering PiP on " + trigger);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            PictureInPictureParams params = new PictureInPictureParams.Builder()
-                    .setAspectRatio(new Rational(16, 9))
-                    .build();
             try {
-                enterPictureInPictureMode(params);
+                enterPictureInPictureMode(pipParams());
             } catch (IllegalStateException e) {
                 Log.e(TAG, "Failed to enter PiP mode", e);
                 finish();
             }
+        } else {
+            // PiP not supported on older Android versions.
+            finish();
+        }
+    }
+
+    private void completeLaunch() {
+        if (launch != null && PipMetrics.complete(launch, System.nanoTime())) {
+            Log.d(TAG, "Time to PiP: " + launch.toMap());
+            OverlayEvents.emit("pip", null, launch.toMap());
+        }
+    }
+
+    /// The video's intrinsic size, applied to the PiP window once known or when it changes
+    private void onVideoSize(int width, int height) {
+        if (width <= 0 || height <= 0 || (width == videoWidth && height == videoHeight)) return;
+        videoWidth = width;
+        videoHeight = height;
+        if (pipRequested && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try {
+                setPictureInPictureParams(pipParams());
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                Log.w(TAG, "Failed to update PiP params", e);
+            }
+        }
+    }
+
+    // The video's aspect ratio, 16:9 until it's known; clamped to what PiP accepts (1:2.39 to 2.39:1)
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private PictureInPictureParams pipParams() {
+        Rational ratio = new Rational(16, 9);
+        if (videoWidth > 0 && videoHeight > 0) {
+            final float r = Math.max(1 / 2.39f, Math.min(2.39f, videoWidth / (float) videoHeight));
+            ratio = new Rational(Math.round(r * 1000), 1000);
         }
+        return new PictureInPictureParams.Builder().setAspectRatio(ratio).build();
+    }
+
+    /// Resumes playback if entering or resizing PiP actually paused it, now or in the next moment
+    private void resumeIfPaused() {
+        lastTransitionAt = SystemClock.uptimeMillis();
+        if (videoPaused || (nativePlayer != null && nativePlayer.isPaused())) play();
+    }
+
+    private void play() {
+        if (webView != null) webView.evaluateJavascript(JS_PLAY_VIDEO, null);
+        if (nativePlayer != null) nativePlayer.resume();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // A PiP resize
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && isInPictureInPictureMode()) resumeIfPaused();
     }
 
     /**
-     * FIX FOR VIDEO PAUSING ON RESIZE:
-     * This method is called by the system every time the PiP window is entered OR resized.
-     * We use this hook to forcefully re-issue the play command to the video.
+     * Called by the system every time the PiP window is entered or left.
+     * Entering it may pause the video, which is resumed only if it actually paused.
      */
     @Override
     public void onPictureInPictureModeChanged(boolean isInPipMode, @NonNull Configuration newConfig) {
         super.onPictureInPictureModeChanged(isInPipMode, newConfig);
         if (isInPipMode) {
-            // A resize event occurred. Ensure the video continues playing.
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                if (webView != null) {
-                    webView.evaluateJavascript(JS_PLAY_VIDEO, null);
-                }
-            }, 100); // A small delay to let the resize event settle.
+            completeLaunch();
+            resumeIfPaused();
         } else {
             // The user has closed the PiP window, so we should close this activity.
             finish();
@@ -164,12 +340,9 @@ public class PipActivity extends Activity {
     @Override
     protected void onDestroy() {
         // IMPORTANT: Clean up the WebView properly to avoid memory leaks.
-        if (webView != null) {
-            // Detach from the view hierarchy before destroying.
-            ((ViewGroup) webView.getParent()).removeView(webView);
-            webView.destroy();
-            webView = null;
-        }
+        handler.removeCallbacksAndMessages(null);
+        releaseNativePlayer();
+        releaseWebView();
         super.onDestroy();
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Debug;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Time-to-PiP of PipActivity: phase timestamps (System.nanoTime) from the showYouTubePip call to
+ * the first onPictureInPictureModeChanged, plus a ring of the last {@link #HISTORY} totals.
+ * Only one PiP runs at a time, so this is process-wide.
+ */
+final class PipMetrics {
+    static final int HISTORY = 64;
+
+    static final class Launch {
+        long requestedAt;
+        long createdAt;
+        long pageLoadedAt;
+        long playingAt;          // first 'playing' event of the video
+        long pipAt;
+        boolean warm;            // adopted the prewarmed WebView
+        String path = "web";     // "youtube" | "web" | "native"
+        int pssKb = -1;          // app process PSS at PiP entry, the WebView renderer process isn't included
+
+        private static double since(long start, long at) {
+            return at == 0 ? -1 : (at - start) / 1_000_000.0;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("warm", warm);
+            map.put("path", path);
+            map.put("activityCreatedMs", since(requestedAt, createdAt));
+            map.put("pageLoadedMs", since(requestedAt, pageLoadedAt));
+            map.put("playingMs", since(requestedAt, playingAt));
+            map.put("pipMs", since(requestedAt, pipAt));
+            map.put("pssKb", pssKb);
+            return map;
+        }
+    }
+
+    private static final long[] totals = new long[HISTORY];
+    private static int count;
+    private static Launch current;
+    private static Launch last;
+
+    private PipMetrics() {}
+
+    static synchronized Launch begin(long requestedAt) {
+        current = new Launch();
+        current.requestedAt = requestedAt;
+        return current;
+    }
+
+    /// Closes the launch when PiP is first entered, returns false if it was already closed or superseded.
+    static synchronized boolean complete(Launch launch, long pipAt) {
+        if (launch != current) return false;
+        launch.pipAt = pipAt;
+        launch.pssKb = (int) Debug.getPss();
+        totals[count % HISTORY] = pipAt - launch.requestedAt;
+        count++;
+        last = launch;
+        current = null;
+        return true;
+    }
+
+    static synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        final int n = Math.min(count, HISTORY);
+        long[] sorted = Arrays.copyOf(totals, n);
+        Arrays.sort(sorted);
+        map.put("count", count);
+        map.put("p50Ms", n == 0 ? -1 : sorted[(n - 1) / 2] / 1_000_000.0);
+        map.put("p95Ms", n == 0 ? -1 : sorted[(int) Math.ceil(n * 0.95) - 1] / 1_000_000.0);
+        map.put("last", last != null ? last.toMap() : null);
+        map.put("pending", current != null ? current.toMap() : null);
+        return map;
+    }
+}
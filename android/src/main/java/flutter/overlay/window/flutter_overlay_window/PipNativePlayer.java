@@ -0,0 +1,135 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * MediaPlayer on a SurfaceView for PipActivity, used instead of a WebView for direct media URLs
+ * and file/content URIs: no renderer process and no DOM, just the decoder and a surface.
+ * Main thread only.
+ */
+final class PipNativePlayer implements SurfaceHolder.Callback {
+    private static final String TAG = "PipNativePlayer";
+
+    // Containers and playlists MediaPlayer plays from a URL
+    private static final Pattern MEDIA_PATH = Pattern.compile(
+            ".*\\.(mp4|m4v|webm|mkv|3gp|mov|ts|m3u8|mp3|m4a|aac|ogg|wav)$", Pattern.CASE_INSENSITIVE);
+
+    interface Listener {
+        /// The first video frame is on screen
+        void onPlaying(int width, int height);
+
+        void onVideoSize(int width, int height);
+
+        /// Couldn't play it, the caller falls back to the WebView
+        void onError();
+    }
+
+    static boolean canPlay(@Nullable Uri uri) {
+        if (uri == null || uri.getScheme() == null) return false;
+        switch (uri.getScheme().toLowerCase()) {
+            case "file":
+            case "content":
+                return true;
+            case "http":
+            case "https":
+                String path = uri.getPath();
+                return path != null && MEDIA_PATH.matcher(path).matches();
+            default:
+                return false;
+        }
+    }
+
+    final SurfaceView view;
+    private final Context context;
+    private final Listener listener;
+    @Nullable
+    private MediaPlayer player;
+    private boolean surfaceReady;
+    private boolean prepared;
+
+    PipNativePlayer(@NonNull Context context, @NonNull Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        view = new SurfaceView(context);
+        view.getHolder().addCallback(this);
+    }
+
+    void play(@NonNull Uri uri) {
+        release();
+        MediaPlayer mp = new MediaPlayer();
+        player = mp;
+        prepared = false;
+        mp.setOnPreparedListener(p -> {
+            prepared = true;
+            startIfReady();
+        });
+        mp.setOnVideoSizeChangedListener((p, width, height) -> listener.onVideoSize(width, height));
+        mp.setOnInfoListener((p, what, extra) -> {
+            if (what == MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START) {
+                listener.onPlaying(p.getVideoWidth(), p.getVideoHeight());
+            }
+            return false;
+        });
+        mp.setOnErrorListener((p, what, extra) -> {
+            Log.w(TAG, "Playback error " + what + "/" + extra + " for " + uri);
+            release();
+            listener.onError();
+            return true;
+        });
+        try {
+            mp.setDataSource(context, uri);
+            if (surfaceReady) mp.setDisplay(view.getHolder());
+            mp.prepareAsync();
+        } catch (IOException | IllegalArgumentException | IllegalStateException | SecurityException e) {
+            Log.w(TAG, "Can't open " + uri, e);
+            release();
+            listener.onError();
+        }
+    }
+
+    boolean isPaused() {
+        return player != null && prepared && !player.isPlaying();
+    }
+
+    void resume() {
+        if (player != null && prepared && !player.isPlaying()) player.start();
+    }
+
+    private void startIfReady() {
+        if (player != null && prepared && surfaceReady && !player.isPlaying()) player.start();
+    }
+
+    void release() {
+        if (player == null) return;
+        player.release();
+        player = null;
+        prepared = false;
+    }
+
+    @Override
+    public void surfaceCreated(@NonNull SurfaceHolder holder) {
+        surfaceReady = true;
+        if (player != null) player.setDisplay(holder);
+        startIfReady();
+    }
+
+    @Override
+    public void surfaceChanged(@NonNull SurfaceHolder holder, int format, int width, int height) {}
+
+    @Override
+    public void surfaceDestroyed(@NonNull SurfaceHolder holder) {
+        surfaceReady = false;
+        if (player != null) player.setDisplay(null);
+    }
+}
@@ -0,0 +1,94 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Optional spare WebView for PipActivity, created ahead of time so showYouTubePip doesn't pay
+ * for the WebView provider and renderer process startup. The spare lives on a
+ * MutableContextWrapper of the application context: the activity swaps in itself as the base
+ * context while it's shown, and hands the WebView back when it's destroyed.
+ * Main thread only.
+ */
+final class PipWebViewPool {
+    @Nullable
+    private static WebView spare;
+    private static boolean enabled; // recycle instead of destroy, only once prewarm was asked for
+
+    private PipWebViewPool() {}
+
+    static void prewarm(@NonNull Context context) {
+        enabled = true;
+        if (spare != null) return;
+        spare = create(context.getApplicationContext());
+        // Starts the renderer process too
+        spare.loadUrl("about:blank");
+    }
+
+    /// Drops the spare, PipActivity creates its WebView on demand again
+    static void release() {
+        enabled = false;
+        if (spare != null) {
+            spare.destroy();
+            spare = null;
+        }
+    }
+
+    static boolean hasSpare() {
+        return spare != null;
+    }
+
+    /// The spare when there's one, otherwise a new WebView; either way configured for video playback.
+    static WebView obtain(@NonNull Context activity) {
+        WebView webView = spare;
+        spare = null;
+        if (webView == null) return create(activity);
+        ((MutableContextWrapper) webView.getContext()).setBaseContext(activity);
+        return webView;
+    }
+
+    /// Keeps the WebView as the next spare if prewarming is on, destroys it otherwise.
+    static void recycle(@NonNull WebView webView) {
+        if (webView.getParent() instanceof ViewGroup) ((ViewGroup) webView.getParent()).removeView(webView);
+        if (!enabled || spare != null || !(webView.getContext() instanceof MutableContextWrapper)) {
+            webView.destroy();
+            return;
+        }
+        webView.stopLoading();
+        webView.setWebChromeClient(null);
+        webView.setWebViewClient(new WebViewClient());
+        webView.loadUrl("about:blank");
+        webView.clearHistory();
+        MutableContextWrapper wrapper = (MutableContextWrapper) webView.getContext();
+        wrapper.setBaseContext(wrapper.getApplicationContext()); // don't leak the activity
+        spare = webView;
+    }
+
+    private static WebView create(Context base) {
+        WebView webView = new WebView(new MutableContextWrapper(base));
+
+        // --- AGGRESSIVE PERFORMANCE OPTIMIZATIONS ---
+        WebSettings s = webView.getSettings();
+        s.setJavaScriptEnabled(true);
+        s.setMediaPlaybackRequiresUserGesture(false); // Crucial for autoplay to work.
+        s.setDomStorageEnabled(true);
+
+        // Reduce WebView overhead by disabling features not needed for video playback.
+        s.setAllowFileAccess(false);
+        s.setGeolocationEnabled(false);
+        s.setSupportZoom(false);
+
+        // KEY FIX FOR SMOOTHNESS: Forces the WebView onto a hardware-accelerated layer.
+        // This allows the GPU to handle resizing smoothly without waiting for the WebView to repaint.
+        webView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        return webView;
+    }
+}
@@ -7,6 +7,7 @@ import android.view.WindowManager;
 import androidx.core.app.NotificationCompat;
 
 import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryMessenger;
 
 public abstract class WindowSetup {
 
@@ -15,6 +16,7 @@ public abstract class WindowSetup {
     static int flag = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE;
     static int gravity = Gravity.CENTER;
     static BasicMessageChannel<Object> messenger = null;
+    static BinaryMessenger binaryMessenger = null; // messenger's, for sends encoded off the main thread
     static String overlayTitle = "Overlay is activated";
     static String overlayContent = "Tap to edit settings or disable";
     static String positionGravity = "none";
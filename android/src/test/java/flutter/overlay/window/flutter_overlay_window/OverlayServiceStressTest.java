@@ -0,0 +1,388 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.Invocation;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowWindowManagerImpl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.FlutterInjector;
+import io.flutter.embedding.android.FlutterView;
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.FlutterEngineCache;
+import io.flutter.embedding.engine.FlutterJNI;
+import io.flutter.embedding.engine.loader.FlutterLoader;
+
+/**
+ * Off-device stress and benchmark harness for OverlayService: dozens of overlays on real
+ * FlutterEngine / FlutterView objects whose native side (FlutterJNI, FlutterLoader) is mocked,
+ * synthetic drags through onTouch, resize and snap animations on Robolectric's clock, and
+ * broadcasts. Each scenario reports its throughput, the bytes allocated on the test thread and
+ * the number of updateViewLayout calls, to stdout and to the overlayBench.results file if set.
+ *
+ * cd example/android && ./gradlew :flutter_overlay_window:testDebugUnitTest -PoverlayBench
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class OverlayServiceStressTest {
+    private static final int OVERLAYS = 36;
+    private static final int DRAG_MOVES = 60;
+    private static final int MESSAGES = 200;
+    private static final int TRACED_DRAGS = 6;
+    private static final long FRAME_MS = 16;
+
+    /// Set by build.gradle with -PoverlayBench
+    private static final String RESULTS = System.getProperty("overlayBench.results");
+
+    /// Scheduled for real so TimerTask.cancel() behaves as on a device, but only runs when ticked
+    private static final class ManualTimer extends Timer {
+        private final List<TimerTask> tasks = new ArrayList<>();
+        private boolean cancelled;
+
+        @Override
+        public void schedule(TimerTask task, long delay, long period) {
+            super.schedule(task, TimeUnit.DAYS.toMillis(365), period);
+            tasks.add(task);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            super.cancel();
+        }
+
+        boolean tick() {
+            if (cancelled) return false;
+            for (TimerTask task : new ArrayList<>(tasks)) task.run();
+            return !tasks.isEmpty();
+        }
+    }
+
+    private final List<ManualTimer> timers = new ArrayList<>();
+    private FlutterJNI jni;
+    private ServiceController<OverlayService> controller;
+    private OverlayService service;
+    private int startId;
+    private int savedMaxBoots;
+    private OverlayService.TimerFactory savedTimers;
+
+    @Before
+    public void setUp() {
+        jni = mock(FlutterJNI.class);
+        when(jni.isAttached()).thenReturn(true);
+        FlutterLoader loader = mock(FlutterLoader.class);
+        when(loader.initialized()).thenReturn(true);
+        when(loader.findAppBundlePath()).thenReturn("flutter_assets");
+        FlutterInjector.setInstance(new FlutterInjector.Builder()
+                .setFlutterLoader(loader)
+                .setFlutterJNIFactory(new FlutterJNI.Factory() {
+                    @Override
+                    public FlutterJNI provideFlutterJNI() {
+                        return jni;
+                    }
+                })
+                .build());
+        // A stubbed engine never renders a first frame, so boots would only end on their timeout
+        savedMaxBoots = OverlayScheduler.maxBoots;
+        savedTimers = OverlayService.animationTimers;
+        OverlayScheduler.maxBoots = 0;
+        OverlayService.animationTimers = () -> {
+            ManualTimer timer = new ManualTimer();
+            timers.add(timer);
+            return timer;
+        };
+        controller = Robolectric.buildService(OverlayService.class).create();
+        service = controller.get();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (OverlayTrace.isRecording()) OverlayTrace.stop();
+        controller.destroy();
+        for (ManualTimer timer : timers) timer.cancel();
+        FlutterEngineCache.getInstance().clear();
+        FlutterInjector.reset();
+        OverlayScheduler.maxBoots = savedMaxBoots;
+        OverlayService.animationTimers = savedTimers;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void show(String id, int x, int y) {
+        Intent intent = new Intent(ApplicationProvider.getApplicationContext(), OverlayService.class);
+        intent.putExtra("engineId", id);
+        intent.putExtra("widthDp", 64);
+        intent.putExtra("heightDp", 64);
+        intent.putExtra("alignment", "topLeft");
+        intent.putExtra("flagStr", "flagNotFocusable");
+        intent.putExtra("enableDrag", true);
+        intent.putExtra("positionGravity", "auto");
+        intent.putExtra("startX", x);
+        intent.putExtra("startY", y);
+        intent.putStringArrayListExtra("pluginAllowlist", new ArrayList<>()); // only this plugin
+        service.onStartCommand(intent, 0, ++startId);
+    }
+
+    /// Same as a fresh process: new service, no engines
+    private void restartService() {
+        controller.destroy();
+        for (ManualTimer timer : timers) timer.cancel();
+        timers.clear();
+        FlutterEngineCache.getInstance().clear();
+        controller = Robolectric.buildService(OverlayService.class).create();
+        service = controller.get();
+    }
+
+    private List<String> showAll() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < OVERLAYS; i++) {
+            String id = "stress_" + i;
+            show(id, (i % 6) * 40, (i / 6) * 60);
+            ids.add(id);
+        }
+        idle();
+        return ids;
+    }
+
+    private FlutterView viewOf(String id) {
+        FlutterEngine engine = FlutterEngineCache.getInstance().get(id);
+        ShadowWindowManagerImpl wm = Shadow.extract(service.getSystemService(Context.WINDOW_SERVICE));
+        for (View v : wm.getViews()) {
+            if (v instanceof FlutterView && ((FlutterView) v).getAttachedFlutterEngine() == engine) return (FlutterView) v;
+        }
+        throw new AssertionError("No window for " + id);
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static void advance(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(ms));
+    }
+
+    private void touch(View view, long downAt, int action, float x, float y) {
+        MotionEvent event = MotionEvent.obtain(downAt, SystemClock.uptimeMillis(), action, x, y, 0);
+        service.onTouch(view, event);
+        event.recycle();
+    }
+
+    /// DOWN, DRAG_MOVES moves half a frame apart, UP; returns the number of events
+    private long drag(FlutterView view) {
+        final long downAt = SystemClock.uptimeMillis();
+        touch(view, downAt, MotionEvent.ACTION_DOWN, 100, 100);
+        for (int i = 1; i <= DRAG_MOVES; i++) {
+            advance(FRAME_MS / 2);
+            touch(view, downAt, MotionEvent.ACTION_MOVE, 100 + i * 2, 100 + i);
+        }
+        touch(view, downAt, MotionEvent.ACTION_UP, 100 + DRAG_MOVES * 2, 100 + DRAG_MOVES);
+        return DRAG_MOVES + 2;
+    }
+
+    /// Ticks the snap animation timers until every one has arrived
+    private int settleSnaps() {
+        int ticks = 0;
+        boolean running = true;
+        while (running && ticks < 500) {
+            running = false;
+            for (ManualTimer timer : new ArrayList<>(timers)) running |= timer.tick();
+            idle();
+            ticks++;
+        }
+        return ticks;
+    }
+
+    private static long layouts(List<String> ids) {
+        long total = 0;
+        for (String id : ids) {
+            Map<String, Object> stats = OverlayService.getOverlayStats(id);
+            if (stats != null) total += ((Number) stats.get("layoutCount")).longValue();
+        }
+        return total;
+    }
+
+    private long dispatches() {
+        long n = 0;
+        for (Invocation i : mockingDetails(jni).getInvocations()) {
+            if (i.getMethod().getName().equals("dispatchPlatformMessage")) n++;
+        }
+        return n;
+    }
+
+    /// Bytes allocated by the test thread, -1 on a JVM without the HotSpot extension
+    private static long allocated() {
+        try {
+            Object bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+            Method m = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+            return (long) m.invoke(bean, Thread.currentThread().getId());
+        } catch (Throwable t) {
+            return -1;
+        }
+    }
+
+    private final class Run {
+        final String name;
+        final List<String> ids;
+        final long startedAt = System.nanoTime();
+        final long allocatedBefore = allocated();
+        final long layoutsBefore;
+
+        Run(String name, List<String> ids) {
+            this.name = name;
+            this.ids = ids;
+            this.layoutsBefore = layouts(ids);
+        }
+
+        long report(long ops) {
+            final double ms = (System.nanoTime() - startedAt) / 1_000_000.0;
+            final long bytes = allocatedBefore < 0 ? -1 : allocated() - allocatedBefore;
+            final long updates = layouts(ids) - layoutsBefore;
+            publish(String.format(Locale.ROOT,
+                    "[overlay-bench] %-10s %6d ops %9.1f ms %10.0f ops/s %12d B alloc %8d updateViewLayout",
+                    name, ops, ms, ops / (ms / 1000.0), bytes, updates));
+            return updates;
+        }
+    }
+
+    private static void publish(String line) {
+        System.out.println(line);
+        if (RESULTS == null) return;
+        final File file = new File(RESULTS);
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            out.write(line);
+            out.write('\n');
+        } catch (IOException e) {
+            throw new AssertionError("Can't write " + file, e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test
+    public void showsDozensOfOverlays() {
+        Run run = new Run("show", new ArrayList<>());
+        List<String> ids = showAll();
+        run.report(ids.size());
+        for (String id : ids) {
+            assertTrue(id, OverlayService.hasOverlay(id));
+            assertNotNull(viewOf(id));
+        }
+    }
+
+    @Test
+    public void dragsAndSnapsEveryOverlay() {
+        List<String> ids = showAll();
+        Run run = new Run("drag+snap", ids);
+        long events = 0;
+        for (String id : ids) {
+            events += drag(viewOf(id));
+            // One snap at a time, the service animates a single tray
+            settleSnaps();
+        }
+        final long updates = run.report(events);
+        assertTrue("every move relayouts its window", updates >= (long) ids.size() * DRAG_MOVES);
+    }
+
+    @Test
+    public void animatesResizes() {
+        List<String> ids = showAll();
+        Run run = new Run("resize", ids);
+        for (String id : ids) {
+            assertTrue(OverlayService.requestResize(id, 200, 120, true, 250, false, false));
+        }
+        for (int t = 0; t < 300 / FRAME_MS + 2; t++) advance(FRAME_MS);
+        final long updates = run.report(ids.size());
+        assertTrue("each resize animates over several frames", updates >= (long) ids.size() * 2);
+    }
+
+    @Test
+    public void broadcastsMessages() {
+        List<String> ids = showAll();
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", "tick");
+        message.put("payload", "0123456789abcdef0123456789abcdef");
+        final long before = dispatches();
+        Run run = new Run("broadcast", ids);
+        for (int i = 0; i < MESSAGES; i++) {
+            message.put("seq", i);
+            OverlayService.sendToAll(message);
+        }
+        idle();
+        run.report((long) MESSAGES * ids.size());
+        assertEquals((long) MESSAGES * ids.size(), dispatches() - before);
+    }
+
+    @Test
+    public void replaysARecordedTrace() throws IOException {
+        List<String> ids = showAll();
+        final File file = File.createTempFile("overlay", ".ovtr");
+        file.deleteOnExit();
+        assertTrue(OverlayService.startTraceRecording(file, OverlayTrace.DEFAULT_MAX_BYTES,
+                service.getResources().getDisplayMetrics()));
+        for (String id : ids.subList(0, TRACED_DRAGS)) {
+            drag(viewOf(id));
+            settleSnaps();
+            advance(FRAME_MS);
+        }
+        assertNotNull(OverlayTrace.stop());
+
+        // Same overlays at the same places, as a bug report would be replayed
+        restartService();
+        showAll();
+        final AtomicReference<Map<String, Object>> report = new AtomicReference<>();
+        Run run = new Run("replay", ids);
+        assertTrue(OverlayService.replayTrace(OverlayTrace.read(file), 1.0, report::set));
+        for (int i = 0; i < 10_000 && report.get() == null; i++) {
+            advance(FRAME_MS / 4);
+            settleSnaps();
+        }
+        assertNotNull("replay finished", report.get());
+        run.report(((Number) report.get().get("inputs")).longValue());
+        publish("[overlay-bench] replay report " + report.get());
+        assertEquals(0, report.get().get("failedCalls"));
+        assertEquals(Boolean.TRUE, report.get().get("identical"));
+    }
+}
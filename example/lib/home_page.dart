@@ -1,5 +1,6 @@
 import 'dart:developer';
 import 'dart:isolate';
+import 'dart:typed_data';
 import 'dart:ui';
 
 import 'package:flutter/material.dart';
@@ -18,6 +19,7 @@ class _HomePageState extends State<HomePage> {
   final _receivePort = ReceivePort();
   SendPort? homePort;
   String? latestMessageFromOverlay;
+  bool _hudEnabled = false;
 
   @override
   void initState() {
@@ -36,6 +38,55 @@ class _HomePageState extends State<HomePage> {
     });
   }
 
+  /// Floods the overlays with large messages for 10 seconds while the overlay is dragged,
+  /// then reports the drag frame times. Run it on two builds to compare them.
+  Future<void> _runMessageStress() async {
+    await FlutterOverlayWindow.getOverlayFrameMetrics(reset: true);
+    final payload = {
+      'items': List.generate(200, (i) => {'id': i, 'title': 'item $i', 'tags': ['a', 'b', 'c']}),
+    };
+    final stopwatch = Stopwatch()..start();
+    var sent = 0;
+    while (stopwatch.elapsed < const Duration(seconds: 10)) {
+      await Future.wait(List.generate(10, (_) => FlutterOverlayWindow.shareData(payload)));
+      sent += 10;
+    }
+    final metrics = await FlutterOverlayWindow.getOverlayFrameMetrics();
+    final frames = (metrics?['drag'] as Map?)?['frames'] as Map?;
+    setState(() {
+      latestMessageFromOverlay = 'Sent $sent messages, drag frames: '
+          'count ${frames?['count']}, p50 ${frames?['p50Ms']}ms, '
+          'p95 ${frames?['p95Ms']}ms, jank ${frames?['jank']}';
+    });
+  }
+
+  /// Round trip of 1, 5 and 10 MB through a shared buffer versus the JSON message path
+  Future<void> _runSharedBufferBenchmark() async {
+    final results = <String>[];
+    for (final mb in [1, 5, 10]) {
+      final bytes = Uint8List(mb * 1024 * 1024);
+      for (var i = 0; i < bytes.length; i++) {
+        bytes[i] = i & 0xFF;
+      }
+      await FlutterOverlayWindow.allocateSharedBuffer('bench', bytes.length);
+
+      final buffer = Stopwatch()..start();
+      await FlutterOverlayWindow.writeSharedBuffer('bench', bytes);
+      final read = await FlutterOverlayWindow.readSharedBuffer('bench');
+      buffer.stop();
+
+      // The JSON path: encoded here, decoded natively, re-encoded once and sent to every overlay
+      final json = Stopwatch()..start();
+      await FlutterOverlayWindow.shareData(bytes.toList());
+      json.stop();
+
+      results.add('$mb MB: buffer ${buffer.elapsedMilliseconds}ms (${read?.bytes.length} B), '
+          'json ${json.elapsedMilliseconds}ms');
+    }
+    await FlutterOverlayWindow.releaseSharedBuffer('bench');
+    setState(() => latestMessageFromOverlay = results.join('\n'));
+  }
+
   @override
   Widget build(BuildContext context) {
     return Scaffold(
@@ -193,6 +244,22 @@ class _HomePageState extends State<HomePage> {
                 },
                 child: const Text("Move 2nd overlay position to (0, 0)"),
               ),
+              const SizedBox(height: 20.0),
+              TextButton(
+                onPressed: _runMessageStress,
+                child: const Text("Message stress test (drag the overlay meanwhile)"),
+              ),
+              TextButton(
+                onPressed: _runSharedBufferBenchmark,
+                child: const Text("Shared buffer vs JSON (1-10 MB)"),
+              ),
+              TextButton(
+                onPressed: () {
+                  _hudEnabled = !_hudEnabled;
+                  FlutterOverlayWindow.configurePerformanceHud(enabled: _hudEnabled);
+                },
+                child: const Text("Toggle performance HUD"),
+              ),
               const SizedBox(height: 20),
               Text(latestMessageFromOverlay ?? ''),
             ],
@@ -21,31 +21,23 @@ class _TextFieldOverlayState extends State<TextFieldOverlay> {
 
   @override
   Widget build(BuildContext context) {
-    return Focus(
-      onFocusChange: (hasFocus) async {
-        if (hasFocus) {
-          await FlutterOverlayWindow.updateFlag(OverlayFlag.focusPointer);
-        } else {
-          await FlutterOverlayWindow.updateFlag(OverlayFlag.defaultFlag);
-        }
-      },
-      child: Scaffold(
-        body: SafeArea(
-          child: Center(
-            child: Column(
-              children: [
-                const TextField(
-                  decoration: InputDecoration(hintText: "Write anything"),
-                ),
-                const SizedBox(height: 50.0),
-                TextButton(
-                  onPressed: () {
-                    FlutterOverlayWindow.closeOverlay();
-                  },
-                  child: const Text("Close Overlay"),
-                )
-              ],
-            ),
+    // No updateFlag needed: the window becomes focusable by itself while the keyboard is requested
+    return Scaffold(
+      body: SafeArea(
+        child: Center(
+          child: Column(
+            children: [
+              const TextField(
+                decoration: InputDecoration(hintText: "Write anything"),
+              ),
+              const SizedBox(height: 50.0),
+              TextButton(
+                onPressed: () {
+                  FlutterOverlayWindow.closeOverlay();
+                },
+                child: const Text("Close Overlay"),
+              )
+            ],
           ),
         ),
       ),
@@ -3,3 +3,7 @@ library flutter_overlay_window;
 export 'package:flutter_overlay_window/src/overlay_window.dart';
 export 'package:flutter_overlay_window/src/overlay_config.dart';
 export 'package:flutter_overlay_window/src/models/overlay_position.dart';
+export 'package:flutter_overlay_window/src/models/overlay_flight_event.dart';
+export 'package:flutter_overlay_window/src/models/overlay_shared_buffer.dart';
+export 'package:flutter_overlay_window/src/models/overlay_snap_target.dart';
+export 'package:flutter_overlay_window/src/models/overlay_state_entry.dart';
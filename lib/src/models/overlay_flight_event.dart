@@ -0,0 +1,70 @@
+import 'dart:typed_data';
+
+import 'package:flutter/foundation.dart';
+
+/// Kind of operation recorded by the native flight recorder.
+enum OverlayFlightEventType {
+  unknown,
+  show,
+  close,
+  move,
+  resize,
+  flag,
+  touch,
+  snapStart,
+  snapEnd,
+  messageSend,
+  messageReceive,
+  engineCreate,
+  engineDestroy,
+}
+
+@immutable
+class OverlayFlightEvent {
+  /// Monotonic native timestamp in nanoseconds
+  final int timestampNanos;
+  final OverlayFlightEventType type;
+
+  /// null for events of the main app (e.g. a message received from it)
+  final String? engineId;
+  final int sequence;
+
+  /// Type-specific arguments: x/y px for `move`, width/height px for `resize` and `show`,
+  /// window flags for `flag`, MotionEvent action and dragging for `touch`, size for messages
+  final int a;
+  final int b;
+
+  const OverlayFlightEvent(
+      this.timestampNanos, this.type, this.engineId, this.sequence, this.a, this.b);
+
+  static const int _recordBytes = 24;
+
+  /// Decode the result of `FlutterOverlayWindow.dumpFlightRecorder`
+  static List<OverlayFlightEvent> decode(Map<Object?, Object?>? dump) {
+    final engines = (dump?['engines'] as List?)?.cast<String>() ?? const <String>[];
+    final Uint8List? records = dump?['records'] as Uint8List?;
+    if (records == null) return const [];
+    final data = ByteData.sublistView(records);
+    final events = <OverlayFlightEvent>[];
+    for (var offset = 0; offset + _recordBytes <= data.lengthInBytes; offset += _recordBytes) {
+      final type = data.getInt16(offset + 8, Endian.little);
+      final engine = data.getUint16(offset + 10, Endian.little);
+      events.add(OverlayFlightEvent(
+        data.getInt64(offset, Endian.little),
+        type > 0 && type < OverlayFlightEventType.values.length
+            ? OverlayFlightEventType.values[type]
+            : OverlayFlightEventType.unknown,
+        engine < engines.length ? engines[engine] : null,
+        data.getUint32(offset + 12, Endian.little),
+        data.getInt32(offset + 16, Endian.little),
+        data.getInt32(offset + 20, Endian.little),
+      ));
+    }
+    return events;
+  }
+
+  @override
+  String toString() {
+    return 'OverlayFlightEvent{t=$timestampNanos, type=${type.name}, engineId=$engineId, a=$a, b=$b}';
+  }
+}
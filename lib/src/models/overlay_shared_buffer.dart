@@ -0,0 +1,22 @@
+import 'dart:typed_data';
+
+import 'package:flutter/foundation.dart';
+
+/// Contents of a shared buffer at one version, see `FlutterOverlayWindow.readSharedBuffer`
+@immutable
+class OverlaySharedBuffer {
+  final String name;
+
+  /// Increases on every write, 0 until the first one
+  final int version;
+
+  /// View over the bytes received from the platform, not copied again
+  final Uint8List bytes;
+
+  const OverlaySharedBuffer(this.name, this.version, this.bytes);
+
+  @override
+  String toString() {
+    return 'OverlaySharedBuffer{name=$name, version=$version, length=${bytes.length}}';
+  }
+}
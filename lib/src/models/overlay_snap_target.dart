@@ -0,0 +1,77 @@
+import 'dart:ui';
+
+import 'package:flutter/foundation.dart';
+
+/// Screen edge an [OverlaySnapTarget.edge] target attracts to.
+enum OverlaySnapEdge { left, right, top, bottom }
+
+/// Native magnetic target of a draggable overlay, coordinates in logical pixels of the screen.
+///
+/// While dragging, the overlay is captured by the target its center is within `radius` of
+/// (highest `priority` first, then the nearest), and animates to it when released.
+/// A `dismiss` target closes the overlay once it's released on it.
+@immutable
+class OverlaySnapTarget {
+  final String id;
+  final String _kind;
+  final Offset? point;
+  final OverlaySnapEdge? edge;
+  final Rect? rect;
+  final double radius;
+  final int priority;
+  final bool dismiss;
+
+  /// The overlay is centered on [point]
+  const OverlaySnapTarget.point(
+    this.id,
+    Offset this.point, {
+    this.radius = 48,
+    this.priority = 0,
+    this.dismiss = false,
+  })  : _kind = 'point',
+        edge = null,
+        rect = null;
+
+  /// The overlay sticks to [edge], keeping its position along it
+  const OverlaySnapTarget.edge(
+    this.id,
+    OverlaySnapEdge this.edge, {
+    this.radius = 48,
+    this.priority = 0,
+    this.dismiss = false,
+  })  : _kind = 'edge',
+        point = null,
+        rect = null;
+
+  /// The overlay is centered in [rect], captured anywhere inside it or within `radius` of it
+  const OverlaySnapTarget.rect(
+    this.id,
+    Rect this.rect, {
+    this.radius = 0,
+    this.priority = 0,
+    this.dismiss = false,
+  })  : _kind = 'rect',
+        point = null,
+        edge = null;
+
+  Map<String, dynamic> toMap() => <String, dynamic>{
+        'id': id,
+        'kind': _kind,
+        'radius': radius,
+        'priority': priority,
+        'dismiss': dismiss,
+        if (point != null) ...{'x': point!.dx, 'y': point!.dy},
+        if (edge != null) 'edge': edge!.name,
+        if (rect != null) ...{
+          'left': rect!.left,
+          'top': rect!.top,
+          'right': rect!.right,
+          'bottom': rect!.bottom,
+        },
+      };
+
+  @override
+  String toString() {
+    return 'OverlaySnapTarget{id=$id, kind=$_kind, radius=$radius, priority=$priority, dismiss=$dismiss}';
+  }
+}
@@ -0,0 +1,33 @@
+import 'package:flutter/foundation.dart';
+
+/// One entry of the state shared by the main app and every overlay engine,
+/// see `FlutterOverlayWindow.getSharedState`
+@immutable
+class OverlayStateEntry {
+  final String key;
+
+  /// null when the entry doesn't exist (or was removed)
+  final Object? value;
+
+  /// Increases on every write, 0 when the entry doesn't exist. Pass it to `compareAndSetSharedState`
+  final int version;
+
+  /// Only set by `compareAndSetSharedState`: false when the entry had changed and nothing was written
+  final bool ok;
+
+  const OverlayStateEntry(this.key, this.value, this.version, {this.ok = true});
+
+  factory OverlayStateEntry.fromMap(Map<Object?, Object?> map) => OverlayStateEntry(
+        map['key'] as String,
+        map['value'],
+        (map['version'] as num?)?.toInt() ?? 0,
+        ok: map['ok'] as bool? ?? true,
+      );
+
+  bool get exists => version != 0;
+
+  @override
+  String toString() {
+    return 'OverlayStateEntry{key=$key, version=$version, value=$value}';
+  }
+}
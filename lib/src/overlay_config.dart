@@ -55,6 +55,63 @@ enum OverlayFlag {
   focusPointer,
 }
 
+/// What the liveness watchdog does with an overlay engine that stopped answering.
+enum OverlayRestartPolicy {
+  /// Only flag the engine as unresponsive.
+  none,
+
+  /// Detach and reattach the overlay view to its engine.
+  reattach,
+
+  /// Destroy the engine and show the overlay again with its last arguments.
+  recreate,
+}
+
+/// Screen edge a layout group is docked to.
+enum OverlayDock {
+  /// The group keeps the position of its first overlay.
+  none,
+
+  /// Stacked vertically along the left edge.
+  left,
+
+  /// Stacked vertically along the right edge.
+  right,
+
+  /// Stacked horizontally along the top edge.
+  top,
+
+  /// Stacked horizontally along the bottom edge.
+  bottom,
+}
+
+/// Outcome of a [FlutterOverlayWindow.showOverlay] call, see [FlutterOverlayWindow.configureScheduler].
+enum OverlayAdmission {
+  /// The overlay rendered its first frame (or was already showing).
+  shown,
+
+  /// The queue was full and this request was the lowest in it.
+  rejected,
+
+  /// A newer showOverlay of the same engineId replaced this one while it was queued.
+  superseded,
+
+  /// The overlay was closed before it was shown.
+  cancelled,
+}
+
+/// Refresh rate an overlay window asks the display for.
+enum OverlayRefreshPolicy {
+  /// The display's fastest mode while dragged, snapped or animated, the idle rate once settled.
+  adaptive,
+
+  /// Always the display's fastest mode.
+  max,
+
+  /// Never ask, the system picks the rate.
+  system,
+}
+
 /// The level of detail displayed in notifications on the lock screen.
 enum NotificationVisibility {
   /// Show this notification in its entirety on all lockscreens.
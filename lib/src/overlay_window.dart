@@ -1,9 +1,16 @@
 import 'dart:async';
+import 'dart:convert';
 import 'dart:developer';
+import 'dart:typed_data';
+import 'dart:ui' show FrameTiming, FramePhase;
 
 import 'package:flutter/material.dart';
 import 'package:flutter/services.dart';
+import 'package:flutter_overlay_window/src/models/overlay_flight_event.dart';
 import 'package:flutter_overlay_window/src/models/overlay_position.dart';
+import 'package:flutter_overlay_window/src/models/overlay_shared_buffer.dart';
+import 'package:flutter_overlay_window/src/models/overlay_snap_target.dart';
+import 'package:flutter_overlay_window/src/models/overlay_state_entry.dart';
 import 'package:flutter_overlay_window/src/overlay_config.dart';
 
 class FlutterOverlayWindow {
@@ -13,8 +20,18 @@ class FlutterOverlayWindow {
   static const MethodChannel _channel = MethodChannel("x-slayer/overlay_channel");
 
   static MethodChannel _overlayChannel(String engineId) => MethodChannel('x-slayer/overlay/$engineId');
+
+  static final Set<String> _timedEngines = {};
   static const BasicMessageChannel _overlayMessageChannel =
   BasicMessageChannel("x-slayer/overlay_messenger", JSONMessageCodec());
+  static const EventChannel _eventChannel = EventChannel("x-slayer/overlay_events");
+  static Stream<Map<String, dynamic>>? _events;
+  static const BasicMessageChannel<ByteData> _bufferChannel =
+      BasicMessageChannel("x-slayer/overlay_buffers", BinaryCodec());
+  static const MethodChannel _stateChannel = MethodChannel("x-slayer/overlay_state");
+  static final Map<String, StreamController<OverlayStateEntry>> _stateWatchers = {};
+  static final Map<String, OverlayStateEntry> _stateCache = {}; // kept up to date for watched keys
+  static final Map<String, int> _stateSeq = {}; // write that produced the cached entry
 
   // flutter_overlay_window.dart (Dart wrapper)
   static const String _baseMessenger = "x-slayer/overlay_messenger";
@@ -50,12 +67,29 @@ class FlutterOverlayWindow {
   ///
   /// `startPosition` the overlay start position and default is null
   ///
+  /// `autoImeFocus` make the overlay focusable natively while one of its text fields shows the keyboard,
+  /// so no [updateFlag] round trip is needed, default is true
+  ///
   /// `entrypoint` the Dart top-level function to run for this overlay engine (default: `overlayMain`)
   ///
   /// `engineId` a unique cache key for the engine to use/create (default: `main_engine`)
   ///
   /// `initialRoute` optional initial Flutter route for the overlay engine
-  static Future<void> showOverlay({
+  ///
+  /// `pluginAllowlist` fully-qualified Android class names of the plugins to register on the overlay engine,
+  /// this plugin is always registered. Default is null: every plugin of the app is registered
+  ///
+  /// `layoutGroup` stack this overlay with the other overlays of the same group, see [configureLayoutGroup]
+  ///
+  /// `avoidOverlap` push this overlay out of the other overlays once it or they stop moving, default is false
+  ///
+  /// `layoutOrder` initial position of this overlay within its layout group
+  ///
+  /// `priority` order of admission when [configureScheduler] limits are reached, higher first
+  /// (e.g. a call UI over chatheads); with preemption it may also close lower-priority idle overlays
+  ///
+  /// Completes once the overlay is shown, or with why it won't be
+  static Future<OverlayAdmission?> showOverlay({
     int height = WindowSize.fullCover,
     int width = WindowSize.matchParent,
     OverlayAlignment alignment = OverlayAlignment.center,
@@ -66,15 +100,21 @@ class FlutterOverlayWindow {
     bool enableDrag = false,
     PositionGravity positionGravity = PositionGravity.none,
     OverlayPosition? startPosition,
+    bool autoImeFocus = true,
 
     // NEW:
     String entrypoint = 'overlayMain',
     String engineId = 'tray_engine',
     String? initialRoute,
     List<String>? dartArgs,
+    List<String>? pluginAllowlist,
+    String? layoutGroup,
+    bool avoidOverlap = false,
+    int layoutOrder = 0,
+    int priority = 0,
 
   }) async {
-    await _channel.invokeMethod(
+    final String? res = await _channel.invokeMethod<String?>(
       'showOverlay',
       {
         "height": height,
@@ -87,21 +127,388 @@ class FlutterOverlayWindow {
         "notificationVisibility": visibility.name,
         "positionGravity": positionGravity.name,
         "startPosition": startPosition?.toMap(),
+        "autoImeFocus": autoImeFocus,
 
         // NEW:
         "entrypoint": entrypoint,
         "engineId": engineId,
         "initialRoute": initialRoute,
         "dartArgs": dartArgs,
+        "pluginAllowlist": pluginAllowlist,
+        "layoutGroup": layoutGroup,
+        "avoidOverlap": avoidOverlap,
+        "layoutOrder": layoutOrder,
+        "priority": priority,
+      },
+    );
+    for (final admission in OverlayAdmission.values) {
+      if (admission.name == res) return admission;
+    }
+    return null;
+  }
+
+  /// Native overlay events, every event is a map with `type` and `engineId` keys
+  static Stream<Map<String, dynamic>> get overlayEvents =>
+      _events ??= _eventChannel
+          .receiveBroadcastStream()
+          .map((event) => (event as Map<Object?, Object?>).cast<String, dynamic>());
+
+  /// Emits the phase timings of every overlay launch once its first frame is rendered,
+  /// see [getOverlayLaunchMetrics] for the keys
+  static Stream<Map<String, dynamic>> get overlayLaunchStream =>
+      overlayEvents.where((event) => event['type'] == 'launch');
+
+  /// Get the launch latency of an overlay, all values in milliseconds since the Intent was received:
+  /// `count`, `p50Ms`, `p95Ms` and the `last` / `pending` launch with
+  /// `engineReadyMs`, `entrypointMs`, `viewAttachedMs`, `addViewMs`, `firstFrameMs` (-1 if not reached)
+  static Future<Map<String, dynamic>?> getOverlayLaunchMetrics({String engineId = 'tray_engine'}) async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod(
+      'getOverlayLaunchMetrics',
+      {
+        "engineId": engineId,
+      },
+    );
+    return res?.cast<String, dynamic>();
+  }
+
+  /// Get the frame and relayout histograms of an overlay, keyed by interaction
+  /// (`idle`, `drag`, `resize`, `snap`), each with the histograms
+  /// (`count`, `meanMs`, `maxMs`, `p50Ms`, `p95Ms`, `boundsMs`, `buckets`, plus `jank` for frames):
+  /// `frames`, `build` and `raster`, the overlay engine's frame total span, build and raster durations
+  /// (reported once the overlay called [overlayListener]); `layout`, the updateViewLayout relayouts;
+  /// and `mainThread`, the app's main-thread vsync intervals, the same for every overlay.
+  /// Also the `refreshRate` state: `policy`, `idleHz`, `requestedHz`, `displayHz`, `maxHz`, `changes`
+  ///
+  /// `reset` clears the histograms after reading them
+  static Future<Map<String, dynamic>?> getOverlayFrameMetrics({
+    String engineId = 'tray_engine',
+    bool reset = false,
+  }) async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod(
+      'getOverlayFrameMetrics',
+      {
+        "engineId": engineId,
+        "reset": reset,
+      },
+    );
+    return res?.cast<String, dynamic>();
+  }
+
+  /// Limit how many overlays [showOverlay] runs at once, requests over the limits wait in a queue
+  /// ordered by `priority` then arrival
+  ///
+  /// `maxLiveOverlays` overlays on screen, 0 = no limit (default)
+  ///
+  /// `maxConcurrentBoots` overlays started but not rendered yet, 0 = no limit, default 2
+  ///
+  /// `maxQueued` waiting requests, the lowest one is rejected beyond it, 0 = no limit, default 16
+  ///
+  /// `preempt` close the lowest-priority idle overlay below a waiting request instead of waiting,
+  /// a `preempted` event is sent on [overlayEvents]
+  static Future<void> configureScheduler({
+    int maxLiveOverlays = 0,
+    int maxConcurrentBoots = 2,
+    int maxQueued = 16,
+    bool preempt = false,
+  }) async {
+    await _channel.invokeMethod(
+      'configureScheduler',
+      {
+        "maxLiveOverlays": maxLiveOverlays,
+        "maxConcurrentBoots": maxConcurrentBoots,
+        "maxQueued": maxQueued,
+        "preempt": preempt,
+      },
+    );
+  }
+
+  /// `live`, `booting` and `queued` engineIds, `preempted` and `rejected` counts and the limits
+  static Future<Map<String, dynamic>?> getSchedulerState() async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod('getSchedulerState');
+    return res?.cast<String, dynamic>();
+  }
+
+  /// Set the refresh-rate policy of an overlay, or of the overlays shown next when `engineId` is null
+  ///
+  /// `idleRefreshRate` rate in Hz requested by [OverlayRefreshPolicy.adaptive] once the overlay
+  /// is settled, 0 lets the system pick (default). The rate actually requested is reported
+  /// under `refreshRate` by [getOverlayFrameMetrics]
+  static Future<bool?> configureRefreshRate({
+    String? engineId,
+    OverlayRefreshPolicy policy = OverlayRefreshPolicy.adaptive,
+    double idleRefreshRate = 0,
+  }) async {
+    return await _channel.invokeMethod<bool?>(
+      'configureRefreshRate',
+      {
+        "engineId": engineId,
+        "policy": policy.name,
+        "idleRefreshRate": idleRefreshRate,
+      },
+    );
+  }
+
+  /// Ping every overlay engine periodically to detect wedged isolates
+  ///
+  /// `interval` time between pings, [Duration.zero] disables the watchdog (default)
+  ///
+  /// `deadline` time a ping has to be answered
+  ///
+  /// `maxMisses` consecutive missed deadlines before the engine is flagged unresponsive
+  /// and an `unresponsive` event is sent on [overlayEvents]
+  ///
+  /// `restartPolicy` what to do with an unresponsive engine, default is [OverlayRestartPolicy.none]
+  ///
+  /// Overlays answer the pings once they called [overlayListener] with their engineId
+  static Future<void> configureWatchdog({
+    Duration interval = Duration.zero,
+    Duration deadline = const Duration(seconds: 1),
+    int maxMisses = 3,
+    OverlayRestartPolicy restartPolicy = OverlayRestartPolicy.none,
+  }) async {
+    await _channel.invokeMethod(
+      'configureWatchdog',
+      {
+        "intervalMs": interval.inMilliseconds,
+        "deadlineMs": deadline.inMilliseconds,
+        "maxMisses": maxMisses,
+        "restartPolicy": restartPolicy.name,
+      },
+    );
+  }
+
+  /// Show or hide a native performance HUD over the overlays, for tuning on test devices
+  ///
+  /// It lists per overlay its frame rate while dragged, snapped or resized, its updateViewLayout
+  /// and message rates, plus the engine count and the process RSS
+  ///
+  /// `interval` refresh period, at least 250ms
+  ///
+  /// `corner` one of the four corner alignments, others fall back to [OverlayAlignment.topLeft]
+  static Future<void> configurePerformanceHud({
+    bool enabled = true,
+    Duration interval = const Duration(seconds: 1),
+    OverlayAlignment corner = OverlayAlignment.topLeft,
+  }) async {
+    await _channel.invokeMethod(
+      'configurePerformanceHud',
+      {
+        "enabled": enabled,
+        "intervalMs": interval.inMilliseconds,
+        "corner": corner.name,
+      },
+    );
+  }
+
+  /// Get the watchdog stats of an overlay engine: ping `latency` histogram, `consecutiveMisses`,
+  /// `totalMisses`, `restarts`, `unresponsive` and `lastReplyAgoMs`
+  ///
+  /// without `engineId` the stats of every engine are returned, keyed by engineId
+  static Future<Map<String, dynamic>?> getOverlayHealth({String? engineId}) async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod(
+      'getOverlayHealth',
+      {
+        "engineId": engineId,
+      },
+    );
+    return res?.cast<String, dynamic>();
+  }
+
+  /// Get the resource usage of an overlay engine: `memoryDeltaBytes` (estimated at engine creation),
+  /// `surfaceWidthPx`, `surfaceHeightPx`, `ageMs`, `idleMs` (since the last touch),
+  /// `messagesIn`, `bytesIn`, `messagesOut`, `bytesOut`, `layoutCount` and `visible`
+  ///
+  /// without `engineId` the stats of every engine are returned, keyed by engineId
+  static Future<Map<String, dynamic>?> getOverlayStats({String? engineId}) async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod(
+      'getOverlayStats',
+      {
+        "engineId": engineId,
+      },
+    );
+    return res?.cast<String, dynamic>();
+  }
+
+  /// Configure the last-frame snapshots shown while an overlay engine renders its first frame
+  ///
+  /// `enabled` capture a snapshot when an overlay is closed, default is true
+  ///
+  /// `budgetBytes` memory budget of the snapshot cache, snapshots are also kept on disk
+  ///
+  /// `scale` downscale factor of the snapshots, between 0.05 and 1
+  static Future<void> configureSnapshotCache({
+    bool enabled = true,
+    int budgetBytes = 4 * 1024 * 1024,
+    double scale = 0.5,
+  }) async {
+    await _channel.invokeMethod(
+      'configureSnapshotCache',
+      {
+        "enabled": enabled,
+        "budgetBytes": budgetBytes,
+        "scale": scale,
+      },
+    );
+  }
+
+  /// Get the snapshot cache usage: `bytes`, `budgetBytes`, `entries`, `evictions`, `hits` and `misses`
+  static Future<Map<String, dynamic>?> getSnapshotCacheStats() async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod('getSnapshotCacheStats');
+    return res?.cast<String, dynamic>();
+  }
+
+  /// Configure a layout group: its overlays are stacked along `dock` (or along `vertical` from
+  /// the first overlay's position when not docked), `spacing` dp apart and `margin` dp from the edge.
+  /// Dragging the first overlay moves the whole group, dropping another one reorders it
+  static Future<bool?> configureLayoutGroup(
+    String group, {
+    OverlayDock dock = OverlayDock.none,
+    bool vertical = true,
+    int spacing = 8,
+    int margin = 0,
+  }) async {
+    return await _channel.invokeMethod<bool?>(
+      'configureLayoutGroup',
+      {
+        "group": group,
+        "dock": dock.name,
+        "vertical": vertical,
+        "spacing": spacing,
+        "margin": margin,
+      },
+    );
+  }
+
+  /// Change the layout of a live overlay, see [showOverlay] for the arguments
+  static Future<bool?> setOverlayLayout({
+    String engineId = 'tray_engine',
+    String? layoutGroup,
+    bool avoidOverlap = false,
+    int layoutOrder = 0,
+  }) async {
+    return await _channel.invokeMethod<bool?>(
+      'setOverlayLayout',
+      {
+        "engineId": engineId,
+        "layoutGroup": layoutGroup,
+        "avoidOverlap": avoidOverlap,
+        "layoutOrder": layoutOrder,
+      },
+    );
+  }
+
+  /// Get the last native overlay operations (show, close, move, resize, flag, touch, snap,
+  /// messages, engine create/destroy), oldest first
+  static Future<List<OverlayFlightEvent>> dumpFlightRecorder() async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod('dumpFlightRecorder');
+    return OverlayFlightEvent.decode(res);
+  }
+
+  /// Start recording an interaction trace: raw touches, overlay-changing commands of the app
+  /// and of the overlays, messages to the overlays, and the resulting window layouts
+  ///
+  /// `path` file written by [stopTraceRecording], a new file in the cache directory by default
+  ///
+  /// `maxBytes` recording stops growing past this size and is reported as truncated
+  ///
+  /// Returns the file's path, null if a recording is already running
+  static Future<String?> startTraceRecording({String? path, int maxBytes = 8 << 20}) async {
+    return await _channel.invokeMethod<String?>(
+      'startTraceRecording',
+      {
+        "path": path,
+        "maxBytes": maxBytes,
+      },
+    );
+  }
+
+  /// Stop recording and write the trace: `path`, `bytes`, `records`, `truncated`, `durationMs`,
+  /// null if nothing was recording
+  static Future<Map<String, dynamic>?> stopTraceRecording() async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod('stopTraceRecording');
+    return res?.cast<String, dynamic>();
+  }
+
+  /// Feed a recorded trace back into the running overlays, at its recorded pace divided by `speed`
+  ///
+  /// Completes once replayed with a report comparing the layouts with the recorded ones, per
+  /// overlay: `identical`, `recordedLayouts`, `replayedLayouts`, `matchedLayouts`,
+  /// `divergedEngines`, `firstMismatch`, `maxDeltaPx`, `finalDeltaPx`, plus
+  /// `recordedLayoutTiming` / `replayedLayoutTiming` updateViewLayout histograms to compare builds.
+  /// Show the overlays the trace touches first, as they were when it was recorded
+  static Future<Map<String, dynamic>?> replayTrace(String path, {double speed = 1.0}) async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod(
+      'replayTrace',
+      {
+        "path": path,
+        "speed": speed,
+      },
+    );
+    return res?.cast<String, dynamic>();
+  }
+
+  /// Boot the overlay engine ahead of time without showing any window,
+  /// a later [showOverlay] with the same `engineId` reuses it.
+  ///
+  /// Takes the same engine arguments as [showOverlay]
+  static Future<void> prewarmOverlay({
+    String entrypoint = 'overlayMain',
+    String engineId = 'tray_engine',
+    String? initialRoute,
+    List<String>? dartArgs,
+    List<String>? pluginAllowlist,
+  }) async {
+    await _channel.invokeMethod(
+      'prewarmOverlay',
+      {
+        "entrypoint": entrypoint,
+        "engineId": engineId,
+        "initialRoute": initialRoute,
+        "dartArgs": dartArgs,
+        "pluginAllowlist": pluginAllowlist,
+      },
+    );
+  }
+
+  /// Get the startup cost of an overlay engine in milliseconds:
+  /// `loaderMs`, `constructMs`, `registrationMs`, `entrypointMs`, `firstFrameMs`,
+  /// plus `pluginCount` (-1 when every plugin was registered) and `reused`
+  ///
+  /// `return` null if the engine was never started
+  static Future<Map<String, dynamic>?> getEngineStartupBreakdown({String engineId = 'tray_engine'}) async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod(
+      'getEngineStartupBreakdown',
+      {
+        "engineId": engineId,
       },
     );
+    return res?.cast<String, dynamic>();
   }
 
+  /// Play [url] in a picture-in-picture activity. YouTube links use the embed page in a WebView,
+  /// direct media URLs (mp4, webm, m3u8...) and `file://` / `content://` URIs use a native player,
+  /// anything else is loaded as a web page
   static Future<bool> showYouTubePip(String url) async {
     final ok = await _channel.invokeMethod<bool>('showYouTubePip', {"url": url});
     return ok ?? false;
   }
 
+  /// Create the WebView used by [showYouTubePip] ahead of time, and reuse it after each PiP,
+  /// so the WebView provider and renderer startup isn't paid on every call.
+  /// `enabled: false` releases it
+  static Future<void> prewarmPip({bool enabled = true}) async {
+    await _channel.invokeMethod('prewarmPip', {"enabled": enabled});
+  }
+
+  /// Get the time-to-PiP of [showYouTubePip], in milliseconds since the call: `count`, `p50Ms`, `p95Ms`
+  /// and the `last` / `pending` launch with `warm`, `path` (`youtube`, `web` or `native`), `activityCreatedMs`,
+  /// `pageLoadedMs`, `playingMs`, `pipMs` and `pssKb` (app process memory at PiP entry, without the WebView renderer).
+  /// Each launch is also sent as a `pip` event on [overlayEvents]
+  static Future<Map<String, dynamic>?> getPipMetrics() async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod('getPipMetrics');
+    return res?.cast<String, dynamic>();
+  }
+
   /// Check if overlay permission is granted
   static Future<bool> isPermissionGranted() async {
     try {
@@ -153,7 +560,14 @@ class FlutterOverlayWindow {
   }
 
   // Stream for a specific engineId
+  //
+  // Also answers the native watchdog's pings on this engine's overlay channel, see [configureWatchdog],
+  // and reports this engine's frame timings for [getOverlayFrameMetrics]
   static Stream<dynamic> overlayListener(String engineId) {
+    _overlayChannel(engineId).setMethodCallHandler(_onOverlayCall);
+    if (_timedEngines.add(engineId)) {
+      WidgetsFlutterBinding.ensureInitialized().addTimingsCallback((timings) => _reportFrameTimings(engineId, timings));
+    }
     final ctrl = StreamController.broadcast();
     _engineMsg(engineId).setMessageHandler((message) async {
       ctrl.add(message);
@@ -162,12 +576,218 @@ class FlutterOverlayWindow {
     return ctrl.stream;
   }
 
+  // Vsync start, build, raster and total span in microseconds, 4 values per frame
+  static void _reportFrameTimings(String engineId, List<FrameTiming> timings) {
+    final values = Int64List(timings.length * 4);
+    for (var i = 0; i < timings.length; i++) {
+      final t = timings[i];
+      values[i * 4] = t.timestampInMicroseconds(FramePhase.vsyncStart);
+      values[i * 4 + 1] = t.buildDuration.inMicroseconds;
+      values[i * 4 + 2] = t.rasterDuration.inMicroseconds;
+      values[i * 4 + 3] = t.totalSpan.inMicroseconds;
+    }
+    _overlayChannel(engineId).invokeMethod('frameTimings', values).catchError((_) => null);
+  }
+
+  static Future<dynamic> _onOverlayCall(MethodCall call) async {
+    if (call.method == 'ping') return call.arguments;
+    throw MissingPluginException();
+  }
+
+  /// Read an entry of the state shared natively by the main app and all overlays.
+  /// Works without the main app running; a key watched with [watchSharedState] is read from
+  /// this isolate's copy without a platform call
+  static Future<OverlayStateEntry> getSharedState(String key) async {
+    final cached = _stateCache[key];
+    if (cached != null) return cached;
+    final Map<Object?, Object?>? res = await _stateChannel.invokeMethod('get', {'key': key});
+    return OverlayStateEntry.fromMap(res!);
+  }
+
+  /// All shared entries, or those whose key starts with [prefix]
+  static Future<List<OverlayStateEntry>> getAllSharedState({String? prefix}) async {
+    final List<Object?>? res = await _stateChannel.invokeMethod('getAll', {'prefix': prefix});
+    return (res ?? const [])
+        .map((e) => OverlayStateEntry.fromMap(e as Map<Object?, Object?>))
+        .toList();
+  }
+
+  /// Write a shared entry, `null` removes it. [value] can be anything the standard message codec supports
+  static Future<OverlayStateEntry> setSharedState(String key, Object? value) async {
+    final Map<Object?, Object?>? res =
+        await _stateChannel.invokeMethod('set', {'key': key, 'value': value});
+    return _applyState(res!);
+  }
+
+  /// Write a shared entry only if it is still at [expectedVersion] (0: only if it doesn't exist).
+  /// The result has `ok: false` and the current entry when someone else wrote it first
+  static Future<OverlayStateEntry> compareAndSetSharedState(
+      String key, int expectedVersion, Object? value) async {
+    final Map<Object?, Object?>? res = await _stateChannel.invokeMethod('compareAndSet', {
+      'key': key,
+      'expectedVersion': expectedVersion,
+      'value': value,
+    });
+    return _applyState(res!);
+  }
+
+  /// The current entry for [key], then every change made by any engine.
+  /// Only engines watching a key are notified of its changes
+  static Stream<OverlayStateEntry> watchSharedState(String key) {
+    final existing = _stateWatchers[key];
+    if (existing != null) return existing.stream;
+    _stateChannel.setMethodCallHandler(_onStateCall);
+    late final StreamController<OverlayStateEntry> ctrl;
+    ctrl = StreamController<OverlayStateEntry>.broadcast(
+      onListen: () async {
+        final List<Object?>? res = await _stateChannel.invokeMethod('subscribe', {
+          'keys': [key]
+        });
+        for (final e in res ?? const []) {
+          _applyState(e as Map<Object?, Object?>);
+        }
+      },
+      onCancel: () async {
+        _stateWatchers.remove(key);
+        _stateCache.remove(key);
+        _stateSeq.remove(key);
+        await ctrl.close();
+        await _stateChannel.invokeMethod('unsubscribe', {
+          'keys': [key]
+        });
+      },
+    );
+    _stateWatchers[key] = ctrl;
+    return ctrl.stream;
+  }
+
+  /// Counters of the shared state: `entries`, `version`, `writes`, `casFailures`, `subscriptions`
+  static Future<Map<String, dynamic>?> getSharedStateStats() async {
+    final Map<Object?, Object?>? res = await _stateChannel.invokeMethod('stats');
+    return res?.cast<String, dynamic>();
+  }
+
+  static Future<dynamic> _onStateCall(MethodCall call) async {
+    if (call.method != 'changed') return null;
+    _applyState(call.arguments as Map<Object?, Object?>);
+    return null;
+  }
+
+  /// Caches and emits a watched entry once, whether our write result or the change notification gets here first
+  static OverlayStateEntry _applyState(Map<Object?, Object?> map) {
+    final key = map['key'] as String;
+    final before = _stateSeq[key];
+    final entry = _cacheState(map);
+    final ctrl = _stateWatchers[key];
+    if (_stateSeq[key] != before && ctrl != null && !ctrl.isClosed) ctrl.add(entry);
+    return entry;
+  }
+
+  /// Updates the copy of a watched key unless it already holds a later write
+  static OverlayStateEntry _cacheState(Map<Object?, Object?> map) {
+    final entry = OverlayStateEntry.fromMap(map);
+    final seq = (map['seq'] as num?)?.toInt() ?? entry.version;
+    final previous = _stateSeq[entry.key];
+    if (_stateWatchers.containsKey(entry.key) && (previous == null || seq > previous)) {
+      _stateCache[entry.key] = OverlayStateEntry(entry.key, entry.value, entry.version);
+      _stateSeq[entry.key] = seq;
+    }
+    return entry;
+  }
+
+  /// Create a named native buffer of [capacity] bytes shared by the main app and all overlays,
+  /// for payloads too large to send with [shareData]. Allocating an existing name grows it if needed
+  static Future<bool> allocateSharedBuffer(String name, int capacity) async {
+    final ok = await _channel.invokeMethod<bool>('allocateSharedBuffer', {
+      'name': name,
+      'capacity': capacity,
+    });
+    return ok ?? false;
+  }
+
+  /// Replace the contents of a shared buffer with [bytes], without any encoding.
+  /// Every engine then gets a `sharedBuffer` event with `name`, `version` and `length` on [overlayEvents].
+  /// Returns the new version, or null if the buffer doesn't exist or is too small
+  static Future<int?> writeSharedBuffer(String name, Uint8List bytes) async {
+    final header = _bufferHeader(1, name);
+    final message = Uint8List(header.length + bytes.length)
+      ..setRange(0, header.length, header)
+      ..setRange(header.length, header.length + bytes.length, bytes);
+    final reply = await _bufferChannel.send(ByteData.sublistView(message));
+    if (reply == null || reply.lengthInBytes < 8) return null;
+    return reply.getInt64(0, Endian.little);
+  }
+
+  /// The current contents of a shared buffer, or null if it doesn't exist
+  static Future<OverlaySharedBuffer?> readSharedBuffer(String name) async {
+    final reply = await _bufferChannel.send(ByteData.sublistView(_bufferHeader(2, name)));
+    if (reply == null || reply.lengthInBytes < 8) return null;
+    return OverlaySharedBuffer(
+      name,
+      reply.getInt64(0, Endian.little),
+      reply.buffer.asUint8List(reply.offsetInBytes + 8, reply.lengthInBytes - 8),
+    );
+  }
+
+  /// Free a shared buffer, reads and writes of it then return null
+  static Future<bool> releaseSharedBuffer(String name) async {
+    final ok = await _channel.invokeMethod<bool>('releaseSharedBuffer', {'name': name});
+    return ok ?? false;
+  }
+
+  /// The `sharedBuffer` events of [overlayEvents]: a buffer was written, read it with [readSharedBuffer]
+  static Stream<Map<String, dynamic>> get sharedBufferStream =>
+      overlayEvents.where((event) => event['type'] == 'sharedBuffer');
+
+  /// `capacity`, `length`, `version`, `reads`, `writes` and `shared` (shared memory rather than a
+  /// direct buffer) of every shared buffer, by name
+  static Future<Map<String, dynamic>?> getSharedBufferStats() async {
+    final Map<Object?, Object?>? res = await _channel.invokeMethod('getSharedBufferStats');
+    return res?.cast<String, dynamic>();
+  }
+
+  static Uint8List _bufferHeader(int op, String name) {
+    final encoded = utf8.encode(name);
+    final header = ByteData(3 + encoded.length)
+      ..setUint8(0, op)
+      ..setUint16(1, encoded.length, Endian.little);
+    final bytes = header.buffer.asUint8List();
+    bytes.setRange(3, bytes.length, encoded);
+    return bytes;
+  }
+
   /// Update the overlay flag while the overlay in action
   static Future<bool?> updateFlag(OverlayFlag flag, {String engineId = 'tray_engine'}) async {
     final bool? _res = await _overlayChannel(engineId).invokeMethod<bool?>('updateFlag', {'flag': flag.name});
     return _res;
   }
 
+  /// Publish the parts of the overlay that should receive touches, in logical pixels relative to the overlay
+  ///
+  /// Touches starting outside every region are dropped natively, without reaching Flutter or dragging the window.
+  /// An empty list makes the whole window click-through, `null` makes it fully touchable again.
+  /// The window flags only change when the list switches between empty and non-empty,
+  /// so this can be called on every layout change instead of [updateFlag]
+  static Future<bool?> setTouchableRegions(List<Rect>? regions, {String engineId = 'tray_engine'}) async {
+    final bool? _res = await _overlayChannel(engineId).invokeMethod<bool?>('setTouchableRegions', {
+      'rects': regions
+          ?.expand((r) => <double>[r.left, r.top, r.right, r.bottom])
+          .toList(),
+    });
+    return _res;
+  }
+
+  /// Register the magnetic snap targets of a draggable overlay, replacing the previous ones;
+  /// an empty list removes them. While dragging, `snapTargetEnter` / `snapTargetLeave` events
+  /// (with `targetId`) are sent on [overlayEvents], then `snapTargetCaptured` on release,
+  /// and `dismiss` once an overlay released on a dismiss target is closed
+  static Future<bool?> setSnapTargets(List<OverlaySnapTarget> targets, {String engineId = 'tray_engine'}) async {
+    return await _channel.invokeMethod<bool?>('setSnapTargets', {
+      'engineId': engineId,
+      'targets': targets.map((t) => t.toMap()).toList(),
+    });
+  }
+
   /// Update the overlay size in the screen
   // flutter_overlay_window.dart
   static Future<bool?> resizeOverlay(int width,
@@ -1,4 +1,7 @@
+import 'dart:async';
+
 import 'package:flutter/foundation.dart';
+import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
 import 'package:flutter_overlay_window/flutter_overlay_window.dart';
 
@@ -17,6 +20,21 @@ void main() {
         expect(result, isA<bool>());
       });
     }
+    test('a live overlay engine answers the watchdog ping', () async {
+      FlutterOverlayWindow.overlayListener('live_engine');
+      const codec = StandardMethodCodec();
+      final reply = Completer<ByteData?>();
+      await TestDefaultBinaryMessengerBinding.instance.defaultBinaryMessenger.handlePlatformMessage(
+        'x-slayer/overlay/live_engine',
+        codec.encodeMethodCall(const MethodCall('ping', 7)),
+        reply.complete,
+      );
+      // Answered right away, so OverlayWatchdog never misses a deadline for it
+      final answer = await reply.future.timeout(const Duration(seconds: 1));
+      expect(answer, isNotNull);
+      expect(codec.decodeEnvelope(answer!), 7);
+    });
+
     test('requestPermission should return a boolean', () async {
       final result = await FlutterOverlayWindow.requestPermission();
       expect(result, isA<bool>());